@@ -0,0 +1,123 @@
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Латентност на подсказките от AutocompleteIndex върху голям каталог.
+ *
+ * Индексът се изгражда от генерирани обекти (CatalogBenchmark.generate),
+ * после се пускат заявки по начало (част от заглавие или автор) и заявки с
+ * една-две грешки (разменени, пропуснати или сменени букви) - за всяка се
+ * мери времето и се извеждат p50, p99 и макс. Накрая се мери поддръжката:
+ * изтриване и повторно добавяне на обекти.
+ *
+ * Стартиране (от папката на проекта):
+ *   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+ *   java -Xmx4g -cp bin AutocompleteBenchmark [брой_обекти] [заявки]
+ */
+public class AutocompleteBenchmark {
+    private static final int K = 10;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        long start = System.nanoTime();
+        AutocompleteIndex index = new AutocompleteIndex();
+        for (int i = 0; i < count; i++) {
+            index.add(CatalogBenchmark.generate(i));
+        }
+        System.out.println(String.format(Locale.ROOT, "Обекти: %d, термини: %d, изграждане: %.0f ms",
+                count, index.termCount(), (System.nanoTime() - start) / 1e6));
+
+        Random random = new Random(42);
+        List<String> prefixes = new ArrayList<>();
+        List<String> typos = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int q = 0; q < queries; q++) {
+            AudioItem item = CatalogBenchmark.generate(random.nextInt(count));
+            String text = random.nextBoolean() ? item.getTitle() : item.getAuthor();
+            prefixes.add(text.substring(0, 1 + random.nextInt(text.length())));
+            typos.add(typo(text, random));
+            expected.add(text);
+        }
+
+        // Загряване
+        for (int q = 0; q < Math.min(queries, 5000); q++) {
+            index.suggest(prefixes.get(q), K);
+            index.suggest(typos.get(q), K);
+        }
+
+        measure("по начало", prefixes, q -> index.prefix(q, K));
+        measure("с грешки", typos, q -> index.suggest(q, K));
+
+        // Точност (без мерене): дали оригиналът е сред подсказките
+        int found = 0;
+        for (int q = 0; q < queries; q++) {
+            for (AutocompleteIndex.Suggestion s : index.suggest(typos.get(q), K)) {
+                if (s.text.equals(expected.get(q))) {
+                    found++;
+                    break;
+                }
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "  оригиналът е сред първите %d при %.1f%% от заявките с грешки",
+                K, 100.0 * found / queries));
+
+        // Поддръжка: изтриване и добавяне обратно
+        int updates = Math.min(count, 100_000);
+        start = System.nanoTime();
+        for (int i = 0; i < updates; i++) {
+            AudioItem item = CatalogBenchmark.generate(i);
+            index.remove(item);
+            index.add(item);
+        }
+        System.out.println(String.format(Locale.ROOT, "  изтриване + добавяне: %.2f µs на обект",
+                (System.nanoTime() - start) / 1e3 / updates));
+    }
+
+    private static void measure(String name, List<String> queries,
+                                Function<String, List<AutocompleteIndex.Suggestion>> query) {
+        long[] latencies = new long[queries.size()];
+        int results = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            long t = System.nanoTime();
+            results += query.apply(queries.get(i)).size();
+            latencies[i] = System.nanoTime() - t;
+        }
+        Arrays.sort(latencies);
+        System.out.println(String.format(Locale.ROOT,
+                "  %-10s p50 %.3f ms  p99 %.3f ms  макс %.3f ms  (средно %.1f подсказки)",
+                name, latencies[latencies.length / 2] / 1e6, latencies[(int) (latencies.length * 0.99)] / 1e6,
+                latencies[latencies.length - 1] / 1e6, (double) results / queries.size()));
+    }
+
+    /**
+     * Една или две грешки в буквите: размяна на съседни, пропусната или
+     * сменена буква. Цифрите не се пипат - генерираните заглавия се
+     * различават само по номера, и грешка в него дава друго съществуващо
+     * заглавие, а не правописна грешка.
+     */
+    private static String typo(String text, Random random) {
+        StringBuilder sb = new StringBuilder(text);
+        int edits = text.length() > 6 ? 1 + random.nextInt(2) : 1;
+        for (int e = 0; e < edits; e++) {
+            int i = 1 + random.nextInt(sb.length() - 2);
+            if (!Character.isLetter(sb.charAt(i)) || !Character.isLetter(sb.charAt(i + 1))) {
+                continue;
+            }
+            switch (random.nextInt(3)) {
+                case 0:
+                    char c = sb.charAt(i);
+                    sb.setCharAt(i, sb.charAt(i + 1));
+                    sb.setCharAt(i + 1, c);
+                    break;
+                case 1:
+                    sb.deleteCharAt(i);
+                    break;
+                default:
+                    sb.setCharAt(i, (char) ('а' + random.nextInt(32)));
+            }
+        }
+        return sb.toString();
+    }
+}
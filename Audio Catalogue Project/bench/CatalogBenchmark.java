@@ -0,0 +1,206 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Бенчмарк на основните операции на CatalogManager.
+ *
+ * За всеки размер (по подразбиране 1k, 10k и 100k обекта) се генерира
+ * синтетичен каталог и се измерват: searchGeneral, filterBy*, sortCatalog,
+ * addToPlaylist, deleteItem, parseCSVLine, loadListFromFile и saveToFile.
+ * Всяка операция минава през загряване и няколко измервани итерации с
+ * фиксирана продължителност (както при JMH); резултатът е средно време на
+ * операция.
+ *
+ * Резултатите се записват в JSON във формата на JMH (benchmark, mode,
+ * params.size, primaryMetric.score/scoreError/rawData), за да могат да се
+ * сравняват между версиите със същите инструменти.
+ *
+ * Стартиране (от папката на проекта):
+ *   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+ *   java -cp bin CatalogBenchmark [размери] [файл.json]
+ *   java -Xmx16g -cp bin CatalogBenchmark 1000,10000,100000,1000000,10000000 results.json
+ *
+ * Продължителността на итерациите се задава с -Dbench.warmupMs,
+ * -Dbench.measureMs и -Dbench.iterations.
+ */
+public class CatalogBenchmark {
+    private static final long WARMUP_MS = Long.getLong("bench.warmupMs", 300);
+    private static final long MEASURE_MS = Long.getLong("bench.measureMs", 300);
+    private static final int ITERATIONS = Integer.getInteger("bench.iterations", 5);
+    private static final int WARMUP_ITERATIONS = 2;
+
+    private static final PrintStream console = System.out;
+    private static final PrintStream discard = new PrintStream(OutputStream.nullOutputStream(), false,
+            StandardCharsets.UTF_8);
+
+    private final List<String> results = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException {
+        String sizesArg = args.length > 0 ? args[0] : "1000,10000,100000";
+        Path output = Paths.get(args.length > 1 ? args[1] : "bench-results.json");
+
+        CatalogBenchmark benchmark = new CatalogBenchmark();
+        Path dir = Files.createTempDirectory("catalog-bench");
+        try {
+            for (String size : sizesArg.split(",")) {
+                benchmark.run(Integer.parseInt(size.trim()), dir);
+            }
+        } finally {
+            for (Path file : Files.newDirectoryStream(dir)) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(dir);
+        }
+        benchmark.writeJson(output);
+        console.println("\n💾 Резултатите са записани в " + output.toAbsolutePath());
+    }
+
+    // ==================== СЦЕНАРИИ ====================
+
+    private void run(int size, Path dir) throws IOException {
+        console.println(String.format(Locale.ROOT, "\n=== %,d обекта ===", size));
+        Path csv = dir.resolve("catalog-" + size + ".txt");
+        List<String> lines = new ArrayList<>(size);
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < size; i++) {
+                String line = generate(i).toCSV();
+                lines.add(line);
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+
+        CatalogManager manager = new CatalogManager();
+        quietly(() -> manager.loadCatalogFromFile(csv.toString()));
+        Random random = new Random(7);
+
+        measure("loadListFromFile", size, () -> manager.loadListFromFile(csv.toString()));
+        int[] line = {0};
+        measure("parseCSVLine", size, () -> manager.parseCSVLine(lines.get(line[0]++ % size)));
+        Path saved = dir.resolve("saved-" + size + ".txt");
+        measure("saveToFile", size, () -> manager.saveToFile(saved.toString(), manager.getCatalog()));
+
+        measure("searchGeneral", size, () -> manager.searchGeneral("заглавие " + random.nextInt(size)));
+        measure("filterByCategory", size, () -> manager.filterByCategory(AudioCategory.PODCAST));
+        measure("filterByGenre", size, () -> manager.filterByGenre("жанр " + random.nextInt(60)));
+        measure("filterByAuthor", size, () -> manager.filterByAuthor("автор " + random.nextInt(5000)));
+        measure("filterByYear", size, () -> manager.filterByYear(1950 + random.nextInt(75)));
+        measure("filterByYearRange", size, () -> {
+            int from = 1950 + random.nextInt(70);
+            manager.filterByYearRange(from, from + 5);
+        });
+        String[] criteria = {"title", "author", "year", "duration"};
+        int[] sort = {0};
+        measure("sortCatalog", size, () -> manager.sortCatalog(criteria[sort[0]++ % criteria.length]));
+
+        quietly(() -> manager.createPlaylist("bench"));
+        int[] next = {0};
+        measure("addToPlaylist", size, () -> manager.addToPlaylist("bench", "Заглавие " + (next[0]++ % size)));
+
+        // Изтритият обект се добавя обратно, за да остане размерът същият
+        // (времето включва и addItem)
+        int[] victim = {0};
+        measure("deleteItem", size, () -> {
+            int i = victim[0]++ % size;
+            manager.deleteItem("Заглавие " + i);
+            manager.addItem(generate(i));
+        });
+    }
+
+    /** Детерминиран обект номер i - същото разпределение като в другите бенчмаркове. */
+    static AudioItem generate(int i) {
+        int h = i * 0x9E3779B1;
+        String title = "Заглавие " + i;
+        String author = "Автор " + ((h >>> 8) % 5000);
+        String genre = "Жанр " + ((h >>> 4) % 60);
+        int year = 1950 + ((h >>> 12) % 75);
+        double duration = (1 + ((h >>> 2) % 30000)) / 100.0;
+        switch (i % 4) {
+            case 0: return new Song(title, author, genre, year, duration, "Албум " + (i % 5000));
+            case 1: return new Album(title, author, genre, year, duration, 1 + i % 20);
+            case 2: return new Podcast(title, author, genre, year, duration, 1 + i % 300, author);
+            default: return new Audiobook(title, author, genre, year, duration, "Разказвач " + (i % 200), 1 + i % 40);
+        }
+    }
+
+    // ==================== ИЗМЕРВАНЕ ====================
+
+    private void measure(String name, int size, Runnable op) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(op, WARMUP_MS);
+        }
+        double[] scores = new double[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            scores[i] = iteration(op, MEASURE_MS);
+        }
+
+        double mean = Arrays.stream(scores).average().orElse(0);
+        double variance = Arrays.stream(scores).map(s -> (s - mean) * (s - mean)).sum()
+                / Math.max(1, scores.length - 1);
+        // ~99.9% интервал при нормално разпределение, както го показва JMH
+        double error = 3.29 * Math.sqrt(variance / scores.length);
+        console.println(String.format(Locale.ROOT, "  %-20s %14.1f ± %10.1f ns/op", name, mean, error));
+        results.add(toJson(name, size, mean, error, scores));
+    }
+
+    /** Една итерация: повтаря операцията до изтичане на времето. Връща ns/op. */
+    private static double iteration(Runnable op, long millis) {
+        long deadline = millis * 1_000_000L;
+        long ops = 0;
+        System.setOut(discard);
+        long start = System.nanoTime();
+        long elapsed;
+        try {
+            do {
+                op.run();
+                ops++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < deadline);
+        } finally {
+            System.setOut(console);
+        }
+        return (double) elapsed / ops;
+    }
+
+    private static void quietly(Runnable action) {
+        System.setOut(discard);
+        try {
+            action.run();
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    // ==================== JSON ====================
+
+    private static String toJson(String name, int size, double score, double error, double[] raw) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("  {\n")
+            .append("    \"benchmark\" : \"CatalogBenchmark.").append(name).append("\",\n")
+            .append("    \"mode\" : \"avgt\",\n")
+            .append("    \"warmupIterations\" : ").append(WARMUP_ITERATIONS).append(",\n")
+            .append("    \"measurementIterations\" : ").append(raw.length).append(",\n")
+            .append("    \"params\" : { \"size\" : \"").append(size).append("\" },\n")
+            .append("    \"primaryMetric\" : {\n")
+            .append("      \"score\" : ").append(number(score)).append(",\n")
+            .append("      \"scoreError\" : ").append(number(error)).append(",\n")
+            .append("      \"scoreUnit\" : \"ns/op\",\n")
+            .append("      \"rawData\" : [ [ ");
+        for (int i = 0; i < raw.length; i++) {
+            json.append(i > 0 ? ", " : "").append(number(raw[i]));
+        }
+        json.append(" ] ]\n    }\n  }");
+        return json.toString();
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private void writeJson(Path output) throws IOException {
+        String json = "[\n" + String.join(",\n", results) + "\n]\n";
+        Files.write(output, json.getBytes(StandardCharsets.UTF_8));
+    }
+}
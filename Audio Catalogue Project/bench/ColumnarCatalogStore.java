@@ -0,0 +1,267 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Експеримент за паметта: каталогът по колони (struct-of-arrays). Не се
+ * използва от приложението - мери се от ColumnarFootprintBenchmark.
+ *
+ * Вместо отделен обект с низове за всеки запис, всяко поле е масив:
+ * категорията е byte, годината - short, продължителността - double, а
+ * автор, жанр и текстовото поле на подкласа са номера в общ речник
+ * (StringDictionary). Заглавията са UTF-8 байтове в един общ масив.
+ * Така милион записа с повтарящи се автори и жанрове заемат малка част от
+ * паметта на {@code ArrayList<AudioItem>}.
+ *
+ * Обектите се създават при поискване ({@link #get}) - речниковите низове са
+ * общи, декодира се само заглавието. Филтрите по година, продължителност и
+ * категория могат да работят директно върху колоните, без обекти.
+ *
+ * Изтритите редове се маркират и се пропускат; {@link #compact()} ги
+ * премахва физически (номерата на редовете се променят).
+ */
+public class ColumnarCatalogStore {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final AudioCategory[] CATEGORIES = AudioCategory.values();
+
+    private final StringDictionary dictionary = new StringDictionary();
+
+    private byte[] categories = new byte[INITIAL_CAPACITY];
+    private short[] years = new short[INITIAL_CAPACITY];
+    private double[] durations = new double[INITIAL_CAPACITY];
+    private int[] authors = new int[INITIAL_CAPACITY];
+    private int[] genres = new int[INITIAL_CAPACITY];
+    private int[] extraStrings = new int[INITIAL_CAPACITY]; // албум/водещ/разказвач, -1 за албум
+    private int[] extraInts = new int[INITIAL_CAPACITY];    // брой песни/епизод/глави, 0 за песен
+    private int[] titleEnds = new int[INITIAL_CAPACITY];    // краят на заглавието в titleBytes
+    private byte[] titleBytes = new byte[INITIAL_CAPACITY * 16];
+    private int titleLength;
+
+    private final BitSet deleted = new BitSet();
+    private int rows;
+
+    public static ColumnarCatalogStore of(Collection<? extends AudioItem> items) {
+        ColumnarCatalogStore store = new ColumnarCatalogStore();
+        for (AudioItem item : items) {
+            store.add(item);
+        }
+        return store;
+    }
+
+    // ==================== ЗАПИС ====================
+
+    /** Добавя обекта и връща номера на реда му. */
+    public int add(AudioItem item) {
+        ensureCapacity(rows + 1);
+        int row = rows;
+        categories[row] = (byte) item.getCategory().ordinal();
+        years[row] = (short) item.getYear();
+        durations[row] = item.getDuration();
+        authors[row] = dictionary.idOf(item.getAuthor());
+        genres[row] = dictionary.idOf(item.getGenre());
+        extraStrings[row] = -1;
+        extraInts[row] = 0;
+        if (item instanceof Song) {
+            extraStrings[row] = dictionary.idOf(((Song) item).getAlbum());
+        } else if (item instanceof Album) {
+            extraInts[row] = ((Album) item).getTracksCount();
+        } else if (item instanceof Podcast) {
+            extraStrings[row] = dictionary.idOf(((Podcast) item).getHost());
+            extraInts[row] = ((Podcast) item).getEpisodeNumber();
+        } else if (item instanceof Audiobook) {
+            extraStrings[row] = dictionary.idOf(((Audiobook) item).getNarrator());
+            extraInts[row] = ((Audiobook) item).getChapters();
+        }
+
+        byte[] title = item.getTitle().getBytes(StandardCharsets.UTF_8);
+        if (titleLength + title.length > titleBytes.length) {
+            titleBytes = Arrays.copyOf(titleBytes, Math.max(titleBytes.length * 2, titleLength + title.length));
+        }
+        System.arraycopy(title, 0, titleBytes, titleLength, title.length);
+        titleLength += title.length;
+        titleEnds[row] = titleLength;
+
+        rows++;
+        return row;
+    }
+
+    /** Маркира реда като изтрит. Връща false, ако вече е бил изтрит. */
+    public boolean remove(int row) {
+        checkRow(row);
+        if (deleted.get(row)) {
+            return false;
+        }
+        deleted.set(row);
+        return true;
+    }
+
+    /**
+     * Премахва изтритите редове и освобождава излишния капацитет.
+     * Редовете се преномерират в същия ред.
+     */
+    public void compact() {
+        int target = 0;
+        int titleTarget = 0;
+        int titleEnd = 0;
+        for (int row = 0; row < rows; row++) {
+            // titleEnds се презаписва в движение - началото се помни отделно
+            int titleStart = titleEnd;
+            titleEnd = titleEnds[row];
+            if (deleted.get(row)) {
+                continue;
+            }
+            categories[target] = categories[row];
+            years[target] = years[row];
+            durations[target] = durations[row];
+            authors[target] = authors[row];
+            genres[target] = genres[row];
+            extraStrings[target] = extraStrings[row];
+            extraInts[target] = extraInts[row];
+            System.arraycopy(titleBytes, titleStart, titleBytes, titleTarget, titleEnd - titleStart);
+            titleTarget += titleEnd - titleStart;
+            titleEnds[target] = titleTarget;
+            target++;
+        }
+        rows = target;
+        titleLength = titleTarget;
+        deleted.clear();
+        resize(Math.max(rows, 1));
+        titleBytes = Arrays.copyOf(titleBytes, Math.max(titleLength, 1));
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed > categories.length) {
+            resize(Math.max(needed, categories.length + (categories.length >> 1)));
+        }
+    }
+
+    private void resize(int capacity) {
+        categories = Arrays.copyOf(categories, capacity);
+        years = Arrays.copyOf(years, capacity);
+        durations = Arrays.copyOf(durations, capacity);
+        authors = Arrays.copyOf(authors, capacity);
+        genres = Arrays.copyOf(genres, capacity);
+        extraStrings = Arrays.copyOf(extraStrings, capacity);
+        extraInts = Arrays.copyOf(extraInts, capacity);
+        titleEnds = Arrays.copyOf(titleEnds, capacity);
+    }
+
+    // ==================== ЧЕТЕНЕ ====================
+
+    /** Брой редове, включително изтритите (номерата са 0..rows()-1). */
+    public int rows() {
+        return rows;
+    }
+
+    /** Брой неизтрити записи. */
+    public int size() {
+        return rows - deleted.cardinality();
+    }
+
+    public boolean isDeleted(int row) {
+        checkRow(row);
+        return deleted.get(row);
+    }
+
+    /** Създава обект за реда; null, ако редът е изтрит. */
+    public AudioItem get(int row) {
+        checkRow(row);
+        if (deleted.get(row)) {
+            return null;
+        }
+        String title = title(row);
+        String author = dictionary.get(authors[row]);
+        String genre = dictionary.get(genres[row]);
+        String extra = extraStrings[row] >= 0 ? dictionary.get(extraStrings[row]) : null;
+        switch (category(row)) {
+            case SONG:
+                return new Song(title, author, genre, years[row], durations[row], extra);
+            case ALBUM:
+                return new Album(title, author, genre, years[row], durations[row], extraInts[row]);
+            case PODCAST:
+                return new Podcast(title, author, genre, years[row], durations[row], extraInts[row], extra);
+            default:
+                return new Audiobook(title, author, genre, years[row], durations[row], extra, extraInts[row]);
+        }
+    }
+
+    /** Подава поред всички неизтрити записи. */
+    public void forEach(Consumer<AudioItem> action) {
+        for (int row = deleted.nextClearBit(0); row < rows; row = deleted.nextClearBit(row + 1)) {
+            action.accept(get(row));
+        }
+    }
+
+    /** Всички неизтрити записи като обикновен списък. */
+    public List<AudioItem> toList() {
+        List<AudioItem> items = new ArrayList<>(size());
+        forEach(items::add);
+        return items;
+    }
+
+    // Достъп до отделни колони - без създаване на обект
+
+    public AudioCategory category(int row) {
+        return CATEGORIES[categories[row]];
+    }
+
+    public int year(int row) {
+        return years[row];
+    }
+
+    public double duration(int row) {
+        return durations[row];
+    }
+
+    public String author(int row) {
+        return dictionary.get(authors[row]);
+    }
+
+    public String genre(int row) {
+        return dictionary.get(genres[row]);
+    }
+
+    public String title(int row) {
+        int start = titleStart(row);
+        return new String(titleBytes, start, titleEnds[row] - start, StandardCharsets.UTF_8);
+    }
+
+    /** Брой различни низове в речника (автори, жанрове, албуми...). */
+    public int dictionarySize() {
+        return dictionary.size();
+    }
+
+    /** Сбор от продължителностите на неизтритите записи - само по колоната. */
+    public double totalDuration() {
+        double total = 0;
+        for (int row = deleted.nextClearBit(0); row < rows; row = deleted.nextClearBit(row + 1)) {
+            total += durations[row];
+        }
+        return total;
+    }
+
+    /** Номерата на неизтритите редове с година в [from, to]. */
+    public int[] rowsByYear(int from, int to) {
+        int[] result = new int[16];
+        int count = 0;
+        for (int row = deleted.nextClearBit(0); row < rows; row = deleted.nextClearBit(row + 1)) {
+            if (years[row] >= from && years[row] <= to) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count * 2);
+                }
+                result[count++] = row;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private int titleStart(int row) {
+        return row == 0 ? 0 : titleEnds[row - 1];
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException("Няма ред " + row + " (редове: " + rows + ")");
+        }
+    }
+}
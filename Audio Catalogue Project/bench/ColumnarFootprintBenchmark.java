@@ -0,0 +1,98 @@
+import java.util.*;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Сравнение на паметта: {@code ArrayList<AudioItem>} срещу ColumnarCatalogStore.
+ *
+ * Записите се генерират по един и същ начин за двата варианта - всеки със
+ * собствени низове, както при четене от CSV. Измерва се заетият heap след
+ * GC преди и след изграждането, разделен на броя записи. Накрая се проверява,
+ * че обектите от колоните съвпадат с оригиналите, и се сравнява сканиране
+ * по продължителност.
+ *
+ * Стартиране (от папката на проекта):
+ *   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+ *   java -Xmx2g -cp bin ColumnarFootprintBenchmark [брой_записи]
+ */
+public class ColumnarFootprintBenchmark {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.println("Записи: " + count);
+
+        long before = usedHeap();
+        List<AudioItem> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            list.add(CatalogBenchmark.generate(i));
+        }
+        long listBytes = usedHeap() - before;
+        report("ArrayList<AudioItem>", listBytes, count);
+        double listTotal = measureScan("сканиране (обекти)", () -> {
+            double total = 0;
+            for (AudioItem item : list) {
+                total += item.getDuration();
+            }
+            return total;
+        });
+        list.clear();
+        ((ArrayList<AudioItem>) list).trimToSize();
+
+        before = usedHeap();
+        ColumnarCatalogStore store = new ColumnarCatalogStore();
+        for (int i = 0; i < count; i++) {
+            store.add(CatalogBenchmark.generate(i));
+        }
+        store.compact(); // само освобождава излишния капацитет
+        long storeBytes = usedHeap() - before;
+        report("ColumnarCatalogStore", storeBytes, count);
+        double storeTotal = measureScan("сканиране (колона)", store::totalDuration);
+
+        System.out.println(String.format(Locale.ROOT, "  Разлика: %.1fx по-малко памет, речник: %d низа",
+                (double) listBytes / Math.max(1, storeBytes), store.dictionarySize()));
+
+        int mismatches = 0;
+        for (int i = 0; i < count; i += Math.max(1, count / 10_000)) {
+            if (!store.get(i).toCSV().equals(CatalogBenchmark.generate(i).toCSV())) {
+                mismatches++;
+            }
+        }
+        if (mismatches > 0 || Math.abs(listTotal - storeTotal) > 1e-6 * Math.abs(listTotal)) {
+            System.out.println("❌ Колоните не съвпадат с оригиналите (" + mismatches + " разлики)");
+            System.exit(1);
+        }
+        System.out.println("✅ Обектите от колоните съвпадат с оригиналите");
+    }
+
+    private static double measureScan(String name, DoubleSupplier scan) {
+        double result = 0;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            result = scan.getAsDouble();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(String.format(Locale.ROOT, "  %-22s %8.2f ms", name, best / 1e6));
+        return result;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Няколко GC подред, докато стойността се успокои
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    private static void report(String name, long bytes, int count) {
+        System.out.println(String.format(Locale.ROOT, "  %-22s %8.1f MB  %6.1f байта/запис",
+                name, bytes / 1048576.0, (double) bytes / count));
+    }
+}
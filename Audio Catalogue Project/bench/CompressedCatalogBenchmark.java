@@ -0,0 +1,105 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * catalog.txt срещу компресиран каталог (CompressedCatalogFile): размер на
+ * диска, време за запис, време за пълно зареждане и за четене на един ред.
+ *
+ * Зареждането се повтаря няколко пъти и се отчита най-бързото - файловете
+ * са в кеша на ОС, така че се сравнява чистата цена на разкомпресиране и
+ * парсиране; при студен диск компресираният файл печели и от по-малкото
+ * прочетени байтове.
+ *
+ * Стартиране (от папката на проекта):
+ *   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+ *   java -Xmx4g -cp bin CompressedCatalogBenchmark [размери]
+ */
+public class CompressedCatalogBenchmark {
+    private static final int ROUNDS = 5;
+    private static final int LOOKUPS = 5_000;
+
+    public static void main(String[] args) throws IOException {
+        String sizesArg = args.length > 0 ? args[0] : "100000,1000000";
+        Path dir = Files.createTempDirectory("compressed-bench");
+        try {
+            for (String size : sizesArg.split(",")) {
+                run(Integer.parseInt(size.trim()), dir);
+            }
+        } finally {
+            for (Path file : Files.newDirectoryStream(dir)) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static void run(int size, Path dir) throws IOException {
+        List<AudioItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(CatalogBenchmark.generate(i));
+        }
+        Path txt = dir.resolve("catalog-" + size + ".txt");
+        Path acz = dir.resolve("catalog-" + size + ".acz");
+        CatalogManager manager = new CatalogManager();
+        System.out.println(String.format(Locale.ROOT, "\n=== %,d обекта ===", size));
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8));
+        long start = System.nanoTime();
+        try {
+            manager.saveToFile(txt.toString(), items);
+        } finally {
+            System.setOut(console);
+        }
+        long txtWrite = System.nanoTime() - start;
+        start = System.nanoTime();
+        CompressedCatalogFile.write(acz, items);
+        long aczWrite = System.nanoTime() - start;
+
+        long txtLoad = Long.MAX_VALUE;
+        long aczLoad = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            start = System.nanoTime();
+            check(CsvFileLoader.load(txt, manager::parseCSVLine).items.size(), size);
+            txtLoad = Math.min(txtLoad, System.nanoTime() - start);
+            start = System.nanoTime();
+            try (CompressedCatalogFile file = CompressedCatalogFile.open(acz)) {
+                check(file.loadAll(manager::parseCSVLine).items.size(), size);
+            }
+            aczLoad = Math.min(aczLoad, System.nanoTime() - start);
+        }
+
+        report("catalog.txt", Files.size(txt), txtWrite, txtLoad);
+        report("catalog.acz", Files.size(acz), aczWrite, aczLoad);
+        System.out.println(String.format(Locale.ROOT, "  %.1f пъти по-малък",
+                (double) Files.size(txt) / Files.size(acz)));
+
+        try (CompressedCatalogFile file = CompressedCatalogFile.open(acz)) {
+            Random random = new Random(7);
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                int row = random.nextInt(size);
+                if (!file.get(row, manager::parseCSVLine).toCSV().equals(items.get(row).toCSV())) {
+                    System.out.println("❌ Грешен ред " + row);
+                    System.exit(1);
+                }
+            }
+            System.out.println(String.format(Locale.ROOT, "  get(ред): %.1f µs (%d блока)",
+                    (System.nanoTime() - start) / 1e3 / LOOKUPS, file.blockCount()));
+        }
+    }
+
+    private static void check(int loaded, int size) {
+        if (loaded != size) {
+            System.out.println("❌ Заредени " + loaded + " от " + size);
+            System.exit(1);
+        }
+    }
+
+    private static void report(String name, long bytes, long writeNanos, long loadNanos) {
+        System.out.println(String.format(Locale.ROOT, "  %-12s %8.1f MB, запис %7.1f ms, зареждане %7.1f ms",
+                name, bytes / 1048576.0, writeNanos / 1e6, loadNanos / 1e6));
+    }
+}
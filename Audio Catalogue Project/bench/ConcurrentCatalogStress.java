@@ -0,0 +1,212 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Стрес тест на ConcurrentCatalogManager с много нишки едновременно.
+ *
+ * Пишещи нишки добавят свои обекти в каталога (поединично и на пакети) и в
+ * общ плейлист, други изтриват обекти, които са и в плейлисти, а четящи
+ * нишки непрекъснато обхождат каталога, плейлистите, търсенето, сортираните
+ * изгледи и статистиката. Накрая се проверява, че:
+ *  - няма изгубени добавяния - всеки обект и всеки запис в плейлист е там;
+ *  - изтритите обекти ги няма никъде, включително в плейлистите;
+ *  - статистиката съвпада с каталога;
+ *  - четящите нишки не са получили ConcurrentModificationException или
+ *    друго изключение.
+ *
+ * Стартиране (от папката на проекта):
+ *   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+ *   java -cp bin ConcurrentCatalogStress [обекти_на_нишка]
+ */
+public class ConcurrentCatalogStress {
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int DOOMED = 1000;
+
+    private static volatile boolean stop;
+
+    public static void main(String[] args) throws Exception {
+        int perWriter = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        ConcurrentCatalogManager manager = new ConcurrentCatalogManager();
+
+        // Обекти, които ще бъдат изтрити по време на теста - и от плейлист
+        List<AudioItem> doomed = new ArrayList<>();
+        for (int i = 0; i < DOOMED; i++) {
+            doomed.add(new Song("D-" + i, "Изтриван", "Тест", 2000, 1.0, "Албум"));
+        }
+        manager.addAll(doomed);
+        manager.createPlaylist("shared");
+        manager.createPlaylist("doomed");
+        for (int i = 0; i < DOOMED; i++) {
+            manager.addToPlaylist("doomed", "D-" + i);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> writers = new ArrayList<>();
+        AtomicLong readerErrors = new AtomicLong();
+        AtomicLong reads = new AtomicLong();
+
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            writers.add(pool.submit(() -> {
+                await(start);
+                List<AudioItem> batch = new ArrayList<>();
+                for (int i = 0; i < perWriter; i++) {
+                    AudioItem item = new Song("W" + writer + "-" + i, "Автор " + writer,
+                            "Жанр " + (i % 7), 1990 + i % 30, 1 + i % 10, "Албум");
+                    if (i % 2 == 0) {
+                        manager.addItem(item);
+                        addOrFail(manager, "shared", item.getTitle());
+                    } else {
+                        batch.add(item);
+                        if (batch.size() == 50) {
+                            flush(manager, batch);
+                        }
+                    }
+                }
+                flush(manager, batch);
+                return null;
+            }));
+        }
+        writers.add(pool.submit(() -> {
+            await(start);
+            for (int i = 0; i < DOOMED; i++) {
+                if (manager.deleteItem("D-" + i) != 1) {
+                    throw new IllegalStateException("D-" + i + " не е изтрит");
+                }
+            }
+            return null;
+        }));
+
+        List<Future<?>> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            int reader = r;
+            readers.add(pool.submit(() -> {
+                await(start);
+                SortedViews.Order[] orders = SortedViews.Order.values();
+                long n = 0;
+                while (!stop) {
+                    try {
+                        double total = 0;
+                        for (AudioItem item : manager.getCatalog()) {
+                            total += item.getDuration();
+                        }
+                        for (AudioItem item : manager.getPlaylist("shared")) {
+                            total += item.getYear();
+                        }
+                        for (AudioItem item : manager.getPlaylist("doomed")) {
+                            total += item.getYear();
+                        }
+                        manager.sorted(orders[(int) (n % orders.length)]).size();
+                        manager.filterByYear(1990 + (int) (n % 30)).size();
+                        if (n % 50 == reader) {
+                            manager.search("w" + reader).size();
+                        }
+                        manager.getStatistics().count(AudioCategory.SONG);
+                        if (total < 0) {
+                            throw new IllegalStateException();
+                        }
+                    } catch (RuntimeException e) {
+                        if (readerErrors.incrementAndGet() == 1) {
+                            e.printStackTrace();
+                        }
+                    }
+                    n++;
+                }
+                reads.addAndGet(n);
+                return null;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        List<String> failures = new ArrayList<>();
+        for (Future<?> writer : writers) {
+            try {
+                writer.get();
+            } catch (ExecutionException e) {
+                failures.add("пишеща нишка: " + e.getCause());
+            }
+        }
+        stop = true;
+        for (Future<?> reader : readers) {
+            reader.get();
+        }
+        pool.shutdown();
+        long millis = (System.nanoTime() - begin) / 1_000_000;
+
+        // ==================== ПРОВЕРКИ ====================
+
+        int expected = WRITERS * perWriter;
+        if (manager.getCatalogSize() != expected) {
+            failures.add("каталог: " + manager.getCatalogSize() + " обекта, очаквани " + expected);
+        }
+        Set<String> titles = new HashSet<>();
+        for (AudioItem item : manager.getCatalog()) {
+            if (!titles.add(item.getTitle())) {
+                failures.add("дублиран обект: " + item.getTitle());
+            }
+        }
+        for (int w = 0; w < WRITERS; w++) {
+            for (int i = 0; i < perWriter; i++) {
+                if (!titles.contains("W" + w + "-" + i)) {
+                    failures.add("изгубено добавяне: W" + w + "-" + i);
+                }
+            }
+        }
+        int expectedShared = WRITERS * ((perWriter + 1) / 2);
+        List<AudioItem> shared = manager.getPlaylist("shared");
+        if (shared.size() != expectedShared || new HashSet<>(shared).size() != shared.size()) {
+            failures.add("плейлист shared: " + shared.size() + " записа, очаквани " + expectedShared);
+        }
+        if (!manager.getPlaylist("doomed").isEmpty()) {
+            failures.add("изтрити обекти са останали в плейлиста: " + manager.getPlaylist("doomed").size());
+        }
+        if (manager.getStatistics().itemCount != expected
+                || manager.getStatistics().count(AudioCategory.SONG) != expected) {
+            failures.add("статистиката не съвпада: " + manager.getStatistics().itemCount);
+        }
+        try {
+            manager.getPlaylist("shared").clear();
+            failures.add("getPlaylist връща променим списък");
+        } catch (UnsupportedOperationException e) {
+            // очаквано - изгледът е само за четене
+        }
+        if (readerErrors.get() > 0) {
+            failures.add("изключения при четене: " + readerErrors.get());
+        }
+
+        System.out.println(String.format(Locale.ROOT,
+                "%d пишещи + 1 изтриваща + %d четящи нишки, %d ms, %d обхождания от четящите",
+                WRITERS, READERS, millis, reads.get()));
+        if (!failures.isEmpty()) {
+            failures.stream().limit(20).forEach(f -> System.out.println("  ✗ " + f));
+            System.out.println("❌ " + failures.size() + " грешки");
+            System.exit(1);
+        }
+        System.out.println("✅ Няма изгубени промени и изключения при четене");
+    }
+
+    private static void flush(ConcurrentCatalogManager manager, List<AudioItem> batch) {
+        if (manager.addAll(batch) != batch.size()) {
+            throw new IllegalStateException("пакетът не е добавен изцяло");
+        }
+        batch.clear();
+    }
+
+    private static void addOrFail(ConcurrentCatalogManager manager, String playlist, String title) {
+        if (!manager.addToPlaylist(playlist, title)) {
+            throw new IllegalStateException(title + " не е добавен в " + playlist);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
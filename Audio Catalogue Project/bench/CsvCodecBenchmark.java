@@ -0,0 +1,150 @@
+import java.util.*;
+
+/**
+ * Проверка на CSV кодека и измерване на скоростта му.
+ *
+ * 1. Round-trip: всеки от четирите типа (с запетаи, кавички, кирилица и
+ *    "неудобни" продължителности) се записва и разчита обратно под
+ *    български Locale и трябва да се получи същият обект.
+ * 2. Скорост: запис с CsvCodec в преизползван буфер срещу стария
+ *    String.format, и разчитане на записите.
+ *
+ * Стартиране (от папката на проекта):
+ *   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+ *   java -cp bin CsvCodecBenchmark [брой_записи]
+ */
+public class CsvCodecBenchmark {
+
+    public static void main(String[] args) {
+        Locale.setDefault(new Locale("bg", "BG"));
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        int failures = checkRoundTrip();
+        if (failures > 0) {
+            System.out.println("❌ Round-trip: " + failures + " грешки");
+            System.exit(1);
+        }
+        System.out.println("✅ Round-trip: всички записи съвпадат");
+
+        List<AudioItem> items = generate(count);
+        for (int round = 1; round <= 3; round++) {
+            System.out.println("\n--- Кръг " + round + " (" + count + " записа) ---");
+            measureEncode(items);
+            measureLegacyEncode(items);
+            measureDecode(items);
+        }
+    }
+
+    // ==================== ROUND-TRIP ====================
+
+    private static int checkRoundTrip() {
+        List<AudioItem> samples = Arrays.asList(
+            new Song("Мария", "Меди", "Чалга", 2022, 3.0, "Single"),
+            new Song("Hello, World", "Автор \"Х\"", "Поп, рок", 1999, 3.333, "A,B"),
+            new Song("Празен албум", "Някой", "Джаз", 2000, 1.0 / 3, ""),
+            new Album("Албум", "Група", "Рок", 1985, 45.25, 12),
+            new Album("\"В кавички\"", "Група", "Рок", 1900, 1e-4, 1),
+            new Podcast("Епизод, първи", "Водещ", "Новини", 2024, 61.5, 7, "Гост, водещ"),
+            new Audiobook("Под игото", "Иван Вазов", "Роман", 2010, 1234.56, "Разказвач", 42),
+            new Audiobook("Много дълга", "Автор", "Фантастика", 2025, 123456789.125, "\"\"", 3)
+        );
+
+        int failures = 0;
+        for (AudioItem item : samples) {
+            String csv = item.toCSV();
+            AudioItem parsed = decode(csv);
+            if (parsed == null || !parsed.getClass().equals(item.getClass())
+                    || !parsed.toCSV().equals(csv)
+                    || Double.compare(parsed.getDuration(), item.getDuration()) != 0
+                    || !parsed.getTitle().equals(item.getTitle())) {
+                System.out.println("  ✗ " + csv + " -> " + parsed);
+                failures++;
+            }
+        }
+
+        // Стар запис с десетична запетая се разчита като 3.00
+        AudioItem legacy = decode("SONG,Мария,Меди,Чалга,2022,3,00,Single");
+        if (legacy == null || legacy.getDuration() != 3.0 || !((Song) legacy).getAlbum().equals("Single")) {
+            System.out.println("  ✗ стар запис с \"3,00\" -> " + legacy);
+            failures++;
+        }
+        return failures;
+    }
+
+    private static AudioItem decode(String line) {
+        String[] parts = CsvCodec.split(line);
+        switch (parts[0]) {
+            case "SONG": return Song.fromCSV(parts);
+            case "ALBUM": return Album.fromCSV(parts);
+            case "PODCAST": return Podcast.fromCSV(parts);
+            case "AUDIOBOOK": return Audiobook.fromCSV(parts);
+            default: return null;
+        }
+    }
+
+    // ==================== СКОРОСТ ====================
+
+    private static List<AudioItem> generate(int count) {
+        Random random = new Random(42);
+        List<AudioItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String title = "Заглавие " + i;
+            String author = "Автор " + random.nextInt(1000);
+            String genre = "Жанр " + random.nextInt(50);
+            int year = 1950 + random.nextInt(75);
+            double duration = (1 + random.nextInt(30000)) / 100.0;
+            switch (i % 4) {
+                case 0: items.add(new Song(title, author, genre, year, duration, "Албум " + (i % 500))); break;
+                case 1: items.add(new Album(title, author, genre, year, duration, 1 + i % 20)); break;
+                case 2: items.add(new Podcast(title, author, genre, year, duration, 1 + i % 300, author)); break;
+                default: items.add(new Audiobook(title, author, genre, year, duration, "Разказвач", 1 + i % 40)); break;
+            }
+        }
+        return items;
+    }
+
+    private static void measureEncode(List<AudioItem> items) {
+        StringBuilder buffer = new StringBuilder(1 << 16);
+        long chars = 0;
+        long start = System.nanoTime();
+        for (AudioItem item : items) {
+            buffer.setLength(0);
+            item.appendCSV(buffer);
+            chars += buffer.length();
+        }
+        report("CsvCodec запис", items.size(), chars, System.nanoTime() - start);
+    }
+
+    private static void measureLegacyEncode(List<AudioItem> items) {
+        long chars = 0;
+        long start = System.nanoTime();
+        for (AudioItem item : items) {
+            // Старият начин - String.format за всеки запис
+            String csv = String.format(Locale.ROOT, "%s,%s,%s,%s,%d,%.2f",
+                    item.getCategory().name(), item.getTitle(), item.getAuthor(),
+                    item.getGenre(), item.getYear(), item.getDuration());
+            chars += csv.length();
+        }
+        report("String.format запис", items.size(), chars, System.nanoTime() - start);
+    }
+
+    private static void measureDecode(List<AudioItem> items) {
+        List<String> lines = new ArrayList<>(items.size());
+        for (AudioItem item : items) {
+            lines.add(item.toCSV());
+        }
+        long chars = 0;
+        long start = System.nanoTime();
+        for (String line : lines) {
+            AudioItem parsed = decode(line);
+            chars += parsed != null ? line.length() : 0;
+        }
+        report("CsvCodec четене", items.size(), chars, System.nanoTime() - start);
+    }
+
+    private static void report(String name, int records, long chars, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.println(String.format(Locale.ROOT, "  %-22s %8.1f ms  %10.0f записа/s  %7.1f MB/s (UTF-16)",
+                name, nanos / 1e6, records / seconds, chars * 2 / 1048576.0 / seconds));
+    }
+}
@@ -0,0 +1,136 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Стрес тест на журнала: след рестарт CatalogManager трябва да е същият.
+ *
+ * В кръгове се изпълняват случайни промени - добавяне и изтриване на обекти,
+ * добавяне и махане от плейлисти, сортиране за показване, преместване в
+ * плейлист (и след сортиране) и компактиране по средата. След всеки кръг
+ * журналът се затваря, каталогът се отваря наново (snapshot + журнал) и се
+ * сравнява с очакваното: каталогът в реда на добавяне и плейлистите в
+ * собствения им ред.
+ *
+ * Стартиране (от папката на проекта):
+ *   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+ *   java -cp bin JournalReplayStress [кръгове] [промени_на_кръг]
+ */
+public class JournalReplayStress {
+    private static final String[] PLAYLISTS = {"A", "B", "C"};
+    private static final String[] ORDERS = {"title", "author", "year", "duration"};
+
+    private static final PrintStream console = System.out;
+    private static final PrintStream discard = new PrintStream(OutputStream.nullOutputStream(), false,
+            StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int changes = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        Path dir = Files.createTempDirectory("journal-stress");
+        Random random = new Random(42);
+        List<String> failures = new ArrayList<>();
+        int next = 0;
+        int moves = 0;
+
+        System.setOut(discard);
+        try {
+            CatalogManager manager = open(dir);
+            for (String name : PLAYLISTS) {
+                manager.createPlaylist(name);
+            }
+            for (int round = 0; round < rounds; round++) {
+                for (int c = 0; c < changes; c++) {
+                    String playlist = PLAYLISTS[random.nextInt(PLAYLISTS.length)];
+                    int size = manager.getPlaylist(playlist).size();
+                    switch (random.nextInt(8)) {
+                        case 0:
+                        case 1:
+                            manager.addItem(CatalogBenchmark.generate(next++));
+                            break;
+                        case 2:
+                            manager.deleteItem("Заглавие " + random.nextInt(next + 1));
+                            break;
+                        case 3:
+                            manager.addToPlaylist(playlist, "Заглавие " + random.nextInt(next + 1));
+                            break;
+                        case 4:
+                            if (size > 0) {
+                                manager.removeFromPlaylist(playlist,
+                                        manager.getPlaylist(playlist).get(random.nextInt(size)).getTitle());
+                            }
+                            break;
+                        case 5:
+                            manager.sortPlaylist(playlist, ORDERS[random.nextInt(ORDERS.length)]);
+                            break;
+                        case 6:
+                            if (size > 1) {
+                                manager.movePlaylistItem(playlist, 1 + random.nextInt(size), 1 + random.nextInt(size));
+                                moves++;
+                            }
+                            break;
+                        default:
+                            manager.sortCatalog(ORDERS[random.nextInt(ORDERS.length)]);
+                    }
+                    if (c == changes / 2) {
+                        manager.compactJournal();
+                    }
+                }
+
+                List<String> expected = state(manager);
+                manager.closeJournal();
+                manager = open(dir);
+                List<String> actual = state(manager);
+                if (!expected.equals(actual)) {
+                    failures.add("кръг " + round + ": " + firstDifference(expected, actual));
+                }
+            }
+            manager.closeJournal();
+        } finally {
+            System.setOut(console);
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%d кръга по %d промени, %d обекта, %d премествания",
+                rounds, changes, next, moves));
+        if (!failures.isEmpty()) {
+            failures.stream().limit(20).forEach(f -> System.out.println("  ✗ " + f));
+            System.out.println("❌ " + failures.size() + " грешки");
+            System.exit(1);
+        }
+        System.out.println("✅ След всяко отваряне каталогът и плейлистите съвпадат");
+    }
+
+    // Както при стартиране на Main: snapshot (ако има) и журналът след него
+    private static CatalogManager open(Path dir) {
+        CatalogManager manager = new CatalogManager();
+        Path snapshot = dir.resolve("catalog.bin");
+        boolean fromSnapshot = Files.exists(snapshot) && manager.loadSnapshot(snapshot.toString());
+        manager.openJournal(dir.resolve("catalog.journal").toString(), snapshot.toString(), fromSnapshot);
+        return manager;
+    }
+
+    // Каталогът в реда на добавяне и всеки плейлист в собствения му ред
+    private static List<String> state(CatalogManager manager) {
+        List<String> lines = new ArrayList<>();
+        for (AudioItem item : manager.getCatalog()) {
+            lines.add(item.toCSV());
+        }
+        for (String name : PLAYLISTS) {
+            lines.add("PLAYLIST:" + name);
+            for (AudioItem item : manager.getPlaylist(name)) {
+                lines.add(item.toCSV());
+            }
+        }
+        return lines;
+    }
+
+    private static String firstDifference(List<String> expected, List<String> actual) {
+        for (int i = 0; i < Math.min(expected.size(), actual.size()); i++) {
+            if (!expected.get(i).equals(actual.get(i))) {
+                return "ред " + i + ": очакван " + expected.get(i) + ", получен " + actual.get(i);
+            }
+        }
+        return expected.size() + " реда, получени " + actual.size();
+    }
+}
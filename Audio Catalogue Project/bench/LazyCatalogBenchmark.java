@@ -0,0 +1,114 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Време за отваряне и заета памет: CatalogManager.loadCatalogFromFile
+ * срещу LazyCatalog, за каталози с нарастващ размер.
+ *
+ * За всеки размер се генерира CSV файл (CatalogBenchmark.generate) и се
+ * мерят: времето до готовност, заетият heap след GC, произволен достъп до
+ * ред (първи път и от кеша) и търсене. Ленивият вариант се мери първи, за
+ * да не пречат обектите на пълното зареждане.
+ *
+ * Стартиране (от папката на проекта):
+ *   javac -encoding UTF-8 -d bin src/*.java bench/*.java
+ *   java -Xmx4g -cp bin LazyCatalogBenchmark [размери]
+ */
+public class LazyCatalogBenchmark {
+    private static final int LOOKUPS = 10_000;
+
+    public static void main(String[] args) throws IOException {
+        String sizesArg = args.length > 0 ? args[0] : "100000,1000000";
+        Path dir = Files.createTempDirectory("lazy-bench");
+        try {
+            for (String size : sizesArg.split(",")) {
+                run(Integer.parseInt(size.trim()), dir);
+            }
+        } finally {
+            for (Path file : Files.newDirectoryStream(dir)) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static void run(int size, Path dir) throws IOException {
+        Path csv = dir.resolve("catalog-" + size + ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < size; i++) {
+                writer.write(CatalogBenchmark.generate(i).toCSV());
+                writer.newLine();
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "\n=== %,d обекта (%.1f MB) ===",
+                size, Files.size(csv) / 1048576.0));
+
+        CatalogManager parser = new CatalogManager();
+        long before = usedHeap();
+        long start = System.nanoTime();
+        try (LazyCatalog lazy = LazyCatalog.open(csv, parser::parseCSVLine, LazyCatalog.DEFAULT_CACHE_SIZE)) {
+            long openNanos = System.nanoTime() - start;
+            report("LazyCatalog", openNanos, usedHeap() - before);
+
+            Random random = new Random(7);
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                lazy.get(random.nextInt(size));
+            }
+            double cold = (System.nanoTime() - start) / 1e3 / LOOKUPS;
+            random = new Random(7);
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                lazy.get(random.nextInt(size));
+            }
+            double warm = (System.nanoTime() - start) / 1e3 / LOOKUPS;
+            System.out.println(String.format(Locale.ROOT, "  get(ред): %.2f µs първи път, %.2f µs от кеша",
+                    cold, warm));
+
+            start = System.nanoTime();
+            int found = lazy.search("Автор 4999", 20).size();
+            System.out.println(String.format(Locale.ROOT, "  търсене (%d резултата): %.1f ms, в кеша: %d обекта",
+                    found, (System.nanoTime() - start) / 1e6, lazy.cachedCount()));
+            System.out.println(String.format(Locale.ROOT, "  heap с пълен кеш: %.1f MB",
+                    (usedHeap() - before) / 1048576.0));
+        }
+
+        before = usedHeap();
+        start = System.nanoTime();
+        CatalogManager manager = new CatalogManager();
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8));
+        try {
+            manager.loadCatalogFromFile(csv.toString());
+        } finally {
+            System.setOut(console);
+        }
+        report("loadCatalogFromFile", System.nanoTime() - start, usedHeap() - before);
+        if (manager.getCatalogSize() != size) {
+            System.out.println("❌ Заредени " + manager.getCatalogSize() + " от " + size);
+            System.exit(1);
+        }
+    }
+
+    private static void report(String name, long nanos, long bytes) {
+        System.out.println(String.format(Locale.ROOT, "  %-20s готов за %8.1f ms, heap %8.1f MB",
+                name, nanos / 1e6, bytes / 1048576.0));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
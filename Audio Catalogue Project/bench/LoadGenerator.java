@@ -0,0 +1,122 @@
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Генератор на натоварване за CatalogServer.
+ *
+ * Поддържа до {@code clients} едновременни заявки (всяка "клиент" изпраща
+ * следващата си заявка веднага щом получи отговор) към смес от крайните
+ * точки - търсене, филтри, сортиране, плейлисти и статистика. Накрая
+ * извежда пропускателната способност и латентността: p50, p90, p99 и макс.
+ *
+ * Стартиране (от папката на проекта, при пуснат сървър):
+ *   java -cp bin Main --server 8080
+ *   java -cp bin LoadGenerator [http://localhost:8080] [клиенти] [заявки]
+ */
+public class LoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        String base = args.length > 0 ? args[0] : "http://localhost:8080";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 50_000;
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors())))
+                .build();
+        String[] paths = {
+            "/search?q=" + encode("ма"),
+            "/search?q=" + encode("мария"),
+            "/filter?category=SONG",
+            "/filter?from=1990&to=2010",
+            "/filter?genre=" + encode("поп"),
+            "/sort?by=title&limit=20",
+            "/sort?by=duration&limit=20",
+            "/playlists",
+            "/stats",
+        };
+
+        // Загряване, за да не се мерят JIT и отварянето на връзки
+        run(client, base, paths, Math.min(clients, 100), Math.min(requests, 2000));
+        System.out.println(String.format(Locale.ROOT, "Натоварване: %s, %d клиента, %d заявки",
+                base, clients, requests));
+        run(client, base, paths, clients, requests).print();
+        System.exit(0);
+    }
+
+    private static Result run(HttpClient client, String base, String[] paths,
+                              int clients, int requests) throws InterruptedException {
+        long[] latencies = new long[requests];
+        AtomicLong errors = new AtomicLong();
+        AtomicLong next = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(requests);
+        long start = System.nanoTime();
+
+        // Всеки клиент изпраща заявка, и при отговор - следващата
+        for (int c = 0; c < clients && c < requests; c++) {
+            sendNext(client, base, paths, next, requests, latencies, errors, done);
+        }
+        done.await();
+        return new Result(latencies, errors.get(), System.nanoTime() - start);
+    }
+
+    private static void sendNext(HttpClient client, String base, String[] paths, AtomicLong next,
+                                 int requests, long[] latencies, AtomicLong errors, CountDownLatch done) {
+        int index = (int) next.getAndIncrement();
+        if (index >= requests) {
+            return;
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + paths[index % paths.length]))
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        long sent = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+            .whenComplete((response, failure) -> {
+                latencies[index] = System.nanoTime() - sent;
+                if (failure != null || response.statusCode() != 200) {
+                    errors.incrementAndGet();
+                }
+                done.countDown();
+                sendNext(client, base, paths, next, requests, latencies, errors, done);
+            });
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static final class Result {
+        final long[] latencies;
+        final long errors;
+        final long nanos;
+
+        Result(long[] latencies, long errors, long nanos) {
+            this.latencies = latencies.clone();
+            Arrays.sort(this.latencies);
+            this.errors = errors;
+            this.nanos = nanos;
+        }
+
+        double percentileMillis(double p) {
+            int index = (int) Math.ceil(p / 100.0 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, index))] / 1e6;
+        }
+
+        void print() {
+            System.out.println(String.format(Locale.ROOT, "  %.0f заявки/s, грешки: %d",
+                    latencies.length / (nanos / 1e9), errors));
+            System.out.println(String.format(Locale.ROOT,
+                    "  латентност: p50 %.2f ms  p90 %.2f ms  p99 %.2f ms  макс %.2f ms",
+                    percentileMillis(50), percentileMillis(90), percentileMillis(99),
+                    latencies[latencies.length - 1] / 1e6));
+        }
+    }
+}
@@ -0,0 +1,277 @@
+import java.util.*;
+
+/**
+ * Вторични индекси за филтрите по категория, жанр, автор и година.
+ *
+ * Жанрът и авторът се търсят без значение на малки/главни букви (ключ от
+ * {@link TitleIndex#fold(String)}), годините се пазят в сортирана карта,
+ * така че период "от-до" обхожда само годините в него.
+ *
+ * За всеки ключ обектите се пазят в масив, подреден по seq, така че
+ * методите връщат резултатите в реда на каталога без сортиране, а времето
+ * им зависи от броя на намерените обекти, не от размера на каталога.
+ *
+ * {@link #copy()} дава копие само за четене (за друга нишка), което
+ * споделя масивите - виж Items.
+ */
+public class AttributeIndex {
+
+    /**
+     * Обектите с даден ключ, подредени по seq. Докато масивът е споделен с
+     * копие, в него се пише само след края на копието (добавяне в края);
+     * всяка друга промяна минава през нов масив.
+     */
+    private static final class Items {
+        AudioItem[] items = new AudioItem[4];
+        int size;
+        boolean shared;
+
+        void add(AudioItem item) {
+            int at = size;
+            while (at > 0 && items[at - 1].seq > item.seq) {
+                at--;
+            }
+            if (size == items.length || (shared && at < size)) {
+                items = Arrays.copyOf(items, size + (size >> 1) + 1);
+                shared = false;
+            }
+            System.arraycopy(items, at, items, at + 1, size - at);
+            items[at] = item;
+            size++;
+        }
+
+        boolean remove(AudioItem item) {
+            int at = indexOf(item);
+            if (at < 0) {
+                return false;
+            }
+            if (shared) {
+                items = Arrays.copyOf(items, items.length);
+                shared = false;
+            }
+            System.arraycopy(items, at + 1, items, at, size - at - 1);
+            items[--size] = null;
+            return true;
+        }
+
+        /** Позицията на обекта (двоично търсене по seq) или -1. */
+        int indexOf(AudioItem item) {
+            for (int i = firstAfter(item.seq - 1); i < size && items[i].seq == item.seq; i++) {
+                if (items[i] == item) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /** Позицията на първия обект със seq > afterSeq. */
+        int firstAfter(long afterSeq) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (items[mid].seq <= afterSeq) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        Items share() {
+            shared = true;
+            Items copy = new Items();
+            copy.items = items;
+            copy.size = size;
+            copy.shared = true;
+            return copy;
+        }
+
+        List<AudioItem> view() {
+            return Arrays.asList(items).subList(0, size);
+        }
+    }
+
+    private final Map<AudioCategory, Items> byCategory = new EnumMap<>(AudioCategory.class);
+    private final Map<String, Items> byGenre = new HashMap<>();
+    private final Map<String, Items> byAuthor = new HashMap<>();
+    private final NavigableMap<Integer, Items> byYear = new TreeMap<>();
+    // Копие от copy() - само за четене
+    private boolean readOnly;
+
+    public void add(AudioItem item) {
+        checkWritable();
+        byCategory.computeIfAbsent(item.getCategory(), k -> new Items()).add(item);
+        byGenre.computeIfAbsent(TitleIndex.fold(item.getGenre()), k -> new Items()).add(item);
+        byAuthor.computeIfAbsent(TitleIndex.fold(item.getAuthor()), k -> new Items()).add(item);
+        byYear.computeIfAbsent(item.getYear(), k -> new Items()).add(item);
+    }
+
+    public void remove(AudioItem item) {
+        checkWritable();
+        removeFrom(byCategory, item.getCategory(), item);
+        removeFrom(byGenre, TitleIndex.fold(item.getGenre()), item);
+        removeFrom(byAuthor, TitleIndex.fold(item.getAuthor()), item);
+        removeFrom(byYear, item.getYear(), item);
+    }
+
+    public void clear() {
+        checkWritable();
+        byCategory.clear();
+        byGenre.clear();
+        byAuthor.clear();
+        byYear.clear();
+    }
+
+    /**
+     * Копие само за четене, което не се променя от по-късните add/remove
+     * на този индекс. Струва O(брой ключове) - масивите се споделят.
+     */
+    public AttributeIndex copy() {
+        AttributeIndex copy = new AttributeIndex();
+        shareInto(byCategory, copy.byCategory);
+        shareInto(byGenre, copy.byGenre);
+        shareInto(byAuthor, copy.byAuthor);
+        shareInto(byYear, copy.byYear);
+        copy.readOnly = true;
+        return copy;
+    }
+
+    private static <K> void shareInto(Map<K, Items> from, Map<K, Items> to) {
+        from.forEach((key, items) -> to.put(key, items.share()));
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Копието на индекса е само за четене");
+        }
+    }
+
+    public List<AudioItem> byCategory(AudioCategory category) {
+        return inCatalogOrder(byCategory.get(category));
+    }
+
+    public List<AudioItem> byGenre(String genre) {
+        return inCatalogOrder(byGenre.get(TitleIndex.fold(genre)));
+    }
+
+    public List<AudioItem> byAuthor(String author) {
+        return inCatalogOrder(byAuthor.get(TitleIndex.fold(author)));
+    }
+
+    public List<AudioItem> byYear(int year) {
+        return inCatalogOrder(byYear.get(year));
+    }
+
+    public List<AudioItem> byYearRange(int startYear, int endYear) {
+        if (startYear > endYear) {
+            return new ArrayList<>();
+        }
+        Collection<Items> years = byYear.subMap(startYear, true, endYear, true).values();
+        List<AudioItem> results = new ArrayList<>();
+        for (Items items : years) {
+            results.addAll(items.view());
+        }
+        if (years.size() > 1) {
+            results.sort(Comparator.comparingLong(item -> item.seq));
+        }
+        return results;
+    }
+
+    /**
+     * До max обекта от годините в периода със seq > afterSeq, по seq - за
+     * страници (QueryPage). Всяка година започва от курсора (двоично
+     * търсене) и годините се сливат, докато се съберат max обекта.
+     */
+    public List<AudioItem> byYearRangeAfter(int startYear, int endYear, long afterSeq, int max) {
+        List<AudioItem> results = new ArrayList<>();
+        if (startYear > endYear) {
+            return results;
+        }
+        Items[] years = byYear.subMap(startYear, true, endYear, true).values().toArray(new Items[0]);
+        int[] next = new int[years.length];
+        for (int y = 0; y < years.length; y++) {
+            next[y] = years[y].firstAfter(afterSeq);
+        }
+        while (results.size() < max) {
+            int min = -1;
+            for (int y = 0; y < years.length; y++) {
+                if (next[y] < years[y].size
+                        && (min < 0 || years[y].items[next[y]].seq < years[min].items[next[min]].seq)) {
+                    min = y;
+                }
+            }
+            if (min < 0) {
+                break;
+            }
+            results.add(years[min].items[next[min]++]);
+        }
+        return results;
+    }
+
+    // Обектите за даден ключ без копиране, по seq (само за четене) - за
+    // страниците на QueryPage (двоично търсене на курсора) и за обхождания
+    // като TopK. Изгледът е валиден до следващата промяна на индекса.
+
+    public List<AudioItem> viewByCategory(AudioCategory category) {
+        return unmodifiable(byCategory.get(category));
+    }
+
+    public List<AudioItem> viewByGenre(String genre) {
+        return unmodifiable(byGenre.get(TitleIndex.fold(genre)));
+    }
+
+    public List<AudioItem> viewByAuthor(String author) {
+        return unmodifiable(byAuthor.get(TitleIndex.fold(author)));
+    }
+
+    public List<AudioItem> viewByYear(int year) {
+        return unmodifiable(byYear.get(year));
+    }
+
+    private static List<AudioItem> unmodifiable(Items items) {
+        return items == null ? Collections.emptyList() : Collections.unmodifiableList(items.view());
+    }
+
+    // Броят на обектите за даден ключ, без копиране - за оценка на
+    // селективността в QueryPlanner
+
+    public int countCategory(AudioCategory category) {
+        return sizeOf(byCategory.get(category));
+    }
+
+    public int countGenre(String genre) {
+        return sizeOf(byGenre.get(TitleIndex.fold(genre)));
+    }
+
+    public int countAuthor(String author) {
+        return sizeOf(byAuthor.get(TitleIndex.fold(author)));
+    }
+
+    public int countYearRange(int startYear, int endYear) {
+        if (startYear > endYear) {
+            return 0;
+        }
+        int count = 0;
+        for (Items items : byYear.subMap(startYear, true, endYear, true).values()) {
+            count += items.size;
+        }
+        return count;
+    }
+
+    private static int sizeOf(Items items) {
+        return items == null ? 0 : items.size;
+    }
+
+    private static List<AudioItem> inCatalogOrder(Items items) {
+        return items == null ? new ArrayList<>() : new ArrayList<>(items.view());
+    }
+
+    private static <K> void removeFrom(Map<K, Items> index, K key, AudioItem item) {
+        Items items = index.get(key);
+        if (items != null && items.remove(item) && items.size == 0) {
+            index.remove(key);
+        }
+    }
+}
@@ -27,6 +27,12 @@ public abstract class AudioItem implements Serializable {
     protected double duration; // в минути
     protected AudioCategory category;
 
+    // Пореден номер на добавяне в каталога - индексите го ползват,
+    // за да връщат резултатите в реда на каталога
+    transient long seq;
+    // Кеширан идентификатор (виж getId); 0 = още не е изчислен
+    private transient long id;
+
     public AudioItem(String title, String author, String genre, int year, double duration) {
         // Валидация
         if (title == null || title.trim().isEmpty()) {
@@ -46,8 +52,26 @@ public abstract class AudioItem implements Serializable {
         this.duration = duration;
     }
 
-    // Абстрактен метод за CSV - всеки подклас ще го имплементира
-    public abstract String toCSV();
+    // Абстрактен метод за CSV - всеки подклас добавя своя запис в буфера
+    public abstract void appendCSV(StringBuilder out);
+
+    public String toCSV() {
+        StringBuilder sb = new StringBuilder(64);
+        appendCSV(sb);
+        return sb.toString();
+    }
+
+    // Общите полета: ТИП,заглавие,автор,жанр,година,продължителност
+    protected void appendCommonCSV(StringBuilder out, String type) {
+        out.append(type).append(',');
+        CsvCodec.appendField(out, title);
+        out.append(',');
+        CsvCodec.appendField(out, author);
+        out.append(',');
+        CsvCodec.appendField(out, genre);
+        out.append(',').append(year).append(',');
+        CsvCodec.appendDuration(out, duration);
+    }
 
     // Getters
     public String getTitle() { return title; }
@@ -57,6 +81,25 @@ public abstract class AudioItem implements Serializable {
     public double getDuration() { return duration; }
     public AudioCategory getCategory() { return category; }
 
+    /**
+     * Стабилен идентификатор - 64-битов хеш (FNV-1a) на CSV записа.
+     * Полетата не се променят след създаването, затова идентификаторът е
+     * един и същ между стартиранията и обекти с еднакво съдържание имат
+     * еднакъв идентификатор. Плейлистите се записват чрез него.
+     */
+    public long getId() {
+        if (id == 0) {
+            long hash = 0xcbf29ce484222325L;
+            String csv = toCSV();
+            for (int i = 0; i < csv.length(); i++) {
+                hash ^= csv.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            id = hash != 0 ? hash : 1;
+        }
+        return id;
+    }
+
     @Override
     public String toString() {
         return String.format("[%s] '%s' - %s (%d) | %s | %.2f мин.",
@@ -85,9 +128,10 @@ class Song extends AudioItem {
     public String getAlbum() { return album; }
 
     @Override
-    public String toCSV() {
-        return String.format("SONG,%s,%s,%s,%d,%.2f,%s",
-                title, author, genre, year, duration, album);
+    public void appendCSV(StringBuilder out) {
+        appendCommonCSV(out, "SONG");
+        out.append(',');
+        CsvCodec.appendField(out, album);
     }
 
     @Override
@@ -97,6 +141,7 @@ class Song extends AudioItem {
 
     // Създаване от CSV
     public static Song fromCSV(String[] parts) {
+        parts = CsvCodec.repairLocaleDecimal(parts, 7);
         if (parts.length < 7) return null;
         return new Song(parts[1], parts[2], parts[3],
                 Integer.parseInt(parts[4]),
@@ -117,9 +162,9 @@ class Album extends AudioItem {
     public int getTracksCount() { return tracksCount; }
 
     @Override
-    public String toCSV() {
-        return String.format("ALBUM,%s,%s,%s,%d,%.2f,%d",
-                title, author, genre, year, duration, tracksCount);
+    public void appendCSV(StringBuilder out) {
+        appendCommonCSV(out, "ALBUM");
+        out.append(',').append(tracksCount);
     }
 
     @Override
@@ -128,6 +173,7 @@ class Album extends AudioItem {
     }
 
     public static Album fromCSV(String[] parts) {
+        parts = CsvCodec.repairLocaleDecimal(parts, 7);
         if (parts.length < 7) return null;
         return new Album(parts[1], parts[2], parts[3],
                 Integer.parseInt(parts[4]),
@@ -152,9 +198,10 @@ class Podcast extends AudioItem {
     public String getHost() { return host; }
 
     @Override
-    public String toCSV() {
-        return String.format("PODCAST,%s,%s,%s,%d,%.2f,%d,%s",
-                title, author, genre, year, duration, episodeNumber, host);
+    public void appendCSV(StringBuilder out) {
+        appendCommonCSV(out, "PODCAST");
+        out.append(',').append(episodeNumber).append(',');
+        CsvCodec.appendField(out, host);
     }
 
     @Override
@@ -163,6 +210,7 @@ class Podcast extends AudioItem {
     }
 
     public static Podcast fromCSV(String[] parts) {
+        parts = CsvCodec.repairLocaleDecimal(parts, 8);
         if (parts.length < 8) return null;
         return new Podcast(parts[1], parts[2], parts[3],
                 Integer.parseInt(parts[4]),
@@ -188,9 +236,11 @@ class Audiobook extends AudioItem {
     public int getChapters() { return chapters; }
 
     @Override
-    public String toCSV() {
-        return String.format("AUDIOBOOK,%s,%s,%s,%d,%.2f,%s,%d",
-                title, author, genre, year, duration, narrator, chapters);
+    public void appendCSV(StringBuilder out) {
+        appendCommonCSV(out, "AUDIOBOOK");
+        out.append(',');
+        CsvCodec.appendField(out, narrator);
+        out.append(',').append(chapters);
     }
 
     @Override
@@ -199,6 +249,7 @@ class Audiobook extends AudioItem {
     }
 
     public static Audiobook fromCSV(String[] parts) {
+        parts = CsvCodec.repairLocaleDecimal(parts, 8);
         if (parts.length < 8) return null;
         return new Audiobook(parts[1], parts[2], parts[3],
                 Integer.parseInt(parts[4]),
@@ -0,0 +1,388 @@
+import java.util.*;
+
+/**
+ * Индекс за подсказки по заглавие и автор - по начало на текста и с
+ * толериране на правописни грешки.
+ *
+ * Всяко различно заглавие и всеки различен автор (без значение на
+ * малки/главни букви, виж {@link TitleIndex#fold(String)}) е един "термин"
+ * с брой обекти. Индексът се поддържа при всяко добавяне и изтриване.
+ *
+ *  - По начало: термините са в сортирана карта, така че всички с дадено
+ *    начало са съседни. Прочитат се най-много {@value #PREFIX_WINDOW} от тях
+ *    и се подреждат по брой обекти - времето не зависи от размера на
+ *    каталога.
+ *  - С грешки: триграмен индекс над термините. Броят се общите триграми
+ *    със заявката (една редакция разваля най-много 4) и разстоянието на
+ *    Левенщайн (с размяна на съседни букви като една грешка) се смята само
+ *    за най-много {@value #MAX_VERIFY} кандидата с най-много общи триграми.
+ *    Триграми, срещани в над {@value #MAX_POSTING} термина, спират да пазят
+ *    списък - те не отличават кандидатите, а обхождането им би струвало
+ *    колкото целия индекс.
+ *
+ * Не е безопасен за използване от няколко нишки (както и CatalogManager).
+ */
+public class AutocompleteIndex {
+    private static final int PREFIX_WINDOW = 256;
+    private static final int MAX_POSTING = 10_000;
+    private static final int MAX_VERIFY = 64;
+    private static final int GRAM = 3;
+
+    /** Подсказка: текстът, колко обекта го имат като заглавие/автор и разстоянието до заявката. */
+    public static final class Suggestion {
+        public final String text;
+        public final int titles;
+        public final int authors;
+        public final int distance;
+
+        Suggestion(Term term, int distance) {
+            this.text = term.display;
+            this.titles = term.titles;
+            this.authors = term.authors;
+            this.distance = distance;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(text).append(" (");
+            if (titles > 0) {
+                sb.append("заглавие");
+                if (titles > 1) {
+                    sb.append(" x").append(titles);
+                }
+            }
+            if (authors > 0) {
+                sb.append(titles > 0 ? ", " : "").append("автор на ").append(authors);
+            }
+            return sb.append(')').toString();
+        }
+    }
+
+    private static final class Term {
+        final String key;
+        final int id;
+        String display;
+        int titles;
+        int authors;
+
+        Term(String key, int id, String display) {
+            this.key = key;
+            this.id = id;
+            this.display = display;
+        }
+
+        int count() {
+            return titles + authors;
+        }
+    }
+
+    /**
+     * Номерата на термините с дадена триграма, в масив за бързо обхождане.
+     * След MAX_POSTING термина масивът се изоставя (ids == null) и се
+     * пази само броят.
+     */
+    private static final class Posting {
+        int[] ids = new int[2];
+        int count;
+        int size;
+
+        void add(int id) {
+            size++;
+            if (ids == null) {
+                return;
+            }
+            if (count == MAX_POSTING) {
+                ids = null;
+                return;
+            }
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = id;
+        }
+
+        void remove(int id) {
+            size--;
+            if (ids == null) {
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                if (ids[i] == id) {
+                    ids[i] = ids[--count]; // редът няма значение
+                    return;
+                }
+            }
+        }
+    }
+
+    private final NavigableMap<String, Term> terms = new TreeMap<>();
+    private final Map<String, Posting> grams = new HashMap<>();
+    // Термин по номер; номерата на изтритите се използват отново, за да е shared малък
+    private Term[] byId = new Term[1024];
+    private final ArrayDeque<Integer> freeIds = new ArrayDeque<>();
+    private int nextId = 0;
+    // Брояч на общите триграми по номер на термин - преизползва се между заявките
+    private int[] shared = new int[0];
+
+    public void add(AudioItem item) {
+        term(item.getTitle()).titles++;
+        term(item.getAuthor()).authors++;
+    }
+
+    public void remove(AudioItem item) {
+        Term title = terms.get(TitleIndex.fold(item.getTitle()));
+        if (title != null) {
+            title.titles--;
+            dropIfUnused(title);
+        }
+        Term author = terms.get(TitleIndex.fold(item.getAuthor()));
+        if (author != null) {
+            author.authors--;
+            dropIfUnused(author);
+        }
+    }
+
+    public void clear() {
+        terms.clear();
+        grams.clear();
+        Arrays.fill(byId, null);
+        freeIds.clear();
+        nextId = 0;
+    }
+
+    public int termCount() {
+        return terms.size();
+    }
+
+    // ==================== ПОДСКАЗКИ ====================
+
+    /**
+     * До k подсказки: първо тези, които започват със заявката (точното
+     * съвпадение е първо, после по брой обекти), а ако не стигат - най-
+     * близките по разстояние на Левенщайн.
+     */
+    public List<Suggestion> suggest(String query, int k) {
+        List<Suggestion> results = prefix(query, k);
+        if (results.size() < k) {
+            Set<String> seen = new HashSet<>();
+            for (Suggestion s : results) {
+                seen.add(TitleIndex.fold(s.text));
+            }
+            for (Suggestion s : fuzzy(query, k)) {
+                if (results.size() < k && seen.add(TitleIndex.fold(s.text))) {
+                    results.add(s);
+                }
+            }
+        }
+        return results;
+    }
+
+    /** Термините, започващи със заявката. */
+    public List<Suggestion> prefix(String query, int k) {
+        String key = TitleIndex.fold(query);
+        List<Term> window = new ArrayList<>();
+        if (key.isEmpty()) {
+            return new ArrayList<>();
+        }
+        for (Term term : terms.tailMap(key, true).values()) {
+            if (!term.key.startsWith(key) || window.size() >= PREFIX_WINDOW) {
+                break;
+            }
+            window.add(term);
+        }
+        window.sort((a, b) -> {
+            boolean exactA = a.key.equals(key);
+            boolean exactB = b.key.equals(key);
+            if (exactA != exactB) {
+                return exactA ? -1 : 1;
+            }
+            if (a.count() != b.count()) {
+                return Integer.compare(b.count(), a.count());
+            }
+            return a.key.compareTo(b.key);
+        });
+        List<Suggestion> results = new ArrayList<>();
+        for (int i = 0; i < window.size() && i < k; i++) {
+            Term term = window.get(i);
+            results.add(new Suggestion(term, term.key.length() - key.length()));
+        }
+        return results;
+    }
+
+    /**
+     * Термините на разстояние на Левенщайн до 1 (заявки до 5 символа) или
+     * 2, подредени по разстояние и после по брой обекти.
+     */
+    public List<Suggestion> fuzzy(String query, int k) {
+        String key = TitleIndex.fold(query);
+        if (key.length() < 2) {
+            return new ArrayList<>();
+        }
+        int maxDistance = key.length() <= 5 ? 1 : 2;
+        if (shared.length < nextId) {
+            shared = new int[Math.max(nextId, shared.length * 2)];
+        }
+
+        // Общи триграми: при разстояние d остават поне |триграми| - 4d.
+        // Пренаситените триграми не се броят и намаляват прага.
+        List<String> queryGrams = gramsOf(key);
+        int needed = queryGrams.size() - (GRAM + 1) * maxDistance;
+        int[] candidates = new int[64];
+        int candidateCount = 0;
+        for (String gram : queryGrams) {
+            Posting posting = grams.get(gram);
+            if (posting == null) {
+                continue;
+            }
+            if (posting.ids == null) {
+                needed--;
+                continue;
+            }
+            int[] ids = posting.ids;
+            for (int i = 0; i < posting.count; i++) {
+                if (shared[ids[i]]++ == 0) {
+                    if (candidateCount == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, candidateCount * 2);
+                    }
+                    candidates[candidateCount++] = ids[i];
+                }
+            }
+        }
+        int threshold = Math.max(1, needed);
+
+        // Проверяват се кандидатите с най-много общи триграми (сортиране с
+        // броене - броят е най-много колкото триграмите на заявката)
+        int[] byShared = new int[queryGrams.size() + 2];
+        for (int i = 0; i < candidateCount; i++) {
+            byShared[shared[candidates[i]]]++;
+        }
+        int minShared = queryGrams.size();
+        for (int total = 0; minShared > threshold && total + byShared[minShared] < MAX_VERIFY; minShared--) {
+            total += byShared[minShared];
+        }
+        List<Term> checked = new ArrayList<>();
+        for (int i = 0; i < candidateCount; i++) {
+            Term term = byId[candidates[i]];
+            if (shared[term.id] >= minShared && Math.abs(term.key.length() - key.length()) <= maxDistance) {
+                checked.add(term);
+            }
+        }
+        checked.sort((a, b) -> Integer.compare(shared[b.id], shared[a.id]));
+        for (int i = 0; i < candidateCount; i++) {
+            shared[candidates[i]] = 0;
+        }
+
+        List<Term> matches = new ArrayList<>();
+        Map<Term, Integer> distances = new HashMap<>();
+        for (int i = 0; i < checked.size() && i < MAX_VERIFY; i++) {
+            Term term = checked.get(i);
+            int distance = levenshtein(key, term.key, maxDistance);
+            if (distance <= maxDistance) {
+                matches.add(term);
+                distances.put(term, distance);
+            }
+        }
+        matches.sort((a, b) -> {
+            int byDistance = Integer.compare(distances.get(a), distances.get(b));
+            if (byDistance != 0) {
+                return byDistance;
+            }
+            if (a.count() != b.count()) {
+                return Integer.compare(b.count(), a.count());
+            }
+            return a.key.compareTo(b.key);
+        });
+        List<Suggestion> results = new ArrayList<>();
+        for (int i = 0; i < matches.size() && i < k; i++) {
+            results.add(new Suggestion(matches.get(i), distances.get(matches.get(i))));
+        }
+        return results;
+    }
+
+    /**
+     * Разстояние на Левенщайн между a и b, като размяната на две съседни
+     * букви е една грешка. Ако е над max, връща max + 1 веднага щом два
+     * поредни реда от таблицата надхвърлят max.
+     */
+    static int levenshtein(String a, String b, int max) {
+        int[] beforePrevious = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        int previousMin = 0;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                char cb = b.charAt(j - 1);
+                int cost = ca == cb ? 0 : 1;
+                int value = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && ca == b.charAt(j - 2) && a.charAt(i - 2) == cb) {
+                    value = Math.min(value, beforePrevious[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            // Размяната гледа два реда назад - спираме, когато и двата са над max
+            if (rowMin > max && previousMin > max) {
+                return max + 1;
+            }
+            previousMin = rowMin;
+            int[] swap = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], max + 1);
+    }
+
+    // ==================== ПОДДРЪЖКА ====================
+
+    private Term term(String text) {
+        String key = TitleIndex.fold(text);
+        Term term = terms.get(key);
+        if (term == null) {
+            term = new Term(key, freeIds.isEmpty() ? nextId++ : freeIds.pop(), text);
+            terms.put(key, term);
+            if (term.id == byId.length) {
+                byId = Arrays.copyOf(byId, byId.length * 2);
+            }
+            byId[term.id] = term;
+            for (String gram : gramsOf(key)) {
+                grams.computeIfAbsent(gram, g -> new Posting()).add(term.id);
+            }
+        }
+        return term;
+    }
+
+    private void dropIfUnused(Term term) {
+        if (term.count() > 0) {
+            return;
+        }
+        terms.remove(term.key);
+        byId[term.id] = null;
+        freeIds.push(term.id);
+        for (String gram : gramsOf(term.key)) {
+            Posting posting = grams.get(gram);
+            if (posting != null) {
+                posting.remove(term.id);
+                if (posting.size == 0) {
+                    grams.remove(gram);
+                }
+            }
+        }
+    }
+
+    /** Триграмите на текста, с допълване в началото и края (различни, в реда на поява). */
+    private static List<String> gramsOf(String key) {
+        String padded = "\u0002\u0002" + key + "\u0003";
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= padded.length(); i++) {
+            result.add(padded.substring(i, i + GRAM));
+        }
+        return new ArrayList<>(result);
+    }
+}
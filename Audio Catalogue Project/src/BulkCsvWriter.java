@@ -0,0 +1,153 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Бързо записване на текстови файлове - CSV на каталога и плейлистите.
+ *
+ * Всеки запис се добавя (appendCSV) в един и същ StringBuilder и се
+ * кодира направо в UTF-8 в масив от {@value #BUFFER_SIZE} байта, който се
+ * записва през FileChannel, когато се напълни. Няма PrintWriter, междинен
+ * String за всеки ред и кодировка по подразбиране на платформата.
+ *
+ * Файлът се пише като *.tmp до целевия и го заменя едва при
+ * {@link #commit()}. Ако записът прекъсне (грешка или close без commit),
+ * временният файл се изтрива, а старият остава непокътнат.
+ *
+ * <pre>
+ *   try (BulkCsvWriter writer = BulkCsvWriter.open(path)) {
+ *       for (AudioItem item : items) {
+ *           writer.writeItem(item);
+ *       }
+ *       writer.commit();
+ *   }
+ * </pre>
+ */
+public class BulkCsvWriter implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    // Най-дългият UTF-8 запис на един символ (двойка surrogate-и)
+    private static final int MAX_CHAR_BYTES = 4;
+    // Като println досега - редовете завършват по правилата на платформата
+    private static final String NEWLINE = System.lineSeparator();
+
+    private final Path target;
+    private final Path tmp;
+    private final FileChannel channel;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+    private final StringBuilder line = new StringBuilder(256);
+    private final long start = System.nanoTime();
+    private int position;
+    private long bytes;
+    private long nanos;
+    private boolean committed;
+
+    private BulkCsvWriter(Path target) throws IOException {
+        this.target = target;
+        this.tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        this.channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    public static BulkCsvWriter open(Path target) throws IOException {
+        return new BulkCsvWriter(target);
+    }
+
+    // ==================== ЗАПИС ====================
+
+    /** Записва обекта като CSV ред (AudioItem.appendCSV). */
+    public void writeItem(AudioItem item) throws IOException {
+        line.setLength(0);
+        item.appendCSV(line);
+        line.append(NEWLINE);
+        encode(line);
+    }
+
+    /** Записва текста и край на ред. */
+    public void writeLine(CharSequence text) throws IOException {
+        encode(text);
+        encode(NEWLINE);
+    }
+
+    /**
+     * Записва останалото от буфера, синхронизира файла с диска и го
+     * премества на мястото на целевия.
+     */
+    public void commit() throws IOException {
+        flush();
+        channel.force(false);
+        channel.close();
+        CatalogSnapshot.moveReplacing(tmp, target);
+        committed = true;
+        nanos = System.nanoTime() - start;
+    }
+
+    /** Без commit записаното досега се изоставя. */
+    @Override
+    public void close() throws IOException {
+        if (!committed) {
+            channel.close();
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // ==================== СКОРОСТ ====================
+
+    /** Записаните байтове. */
+    public long bytes() {
+        return bytes + position;
+    }
+
+    /** Времето от отварянето до commit. */
+    public long nanos() {
+        return nanos;
+    }
+
+    public double megabytesPerSecond() {
+        return nanos == 0 ? 0 : bytes() / 1048576.0 / (nanos / 1e9);
+    }
+
+    // ==================== КОДИРАНЕ ====================
+
+    private void encode(CharSequence text) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (position > BUFFER_SIZE - MAX_CHAR_BYTES) {
+                flush();
+            }
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (cp >> 18));
+                buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Самотен surrogate - като String.getBytes
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        wrapped.clear().limit(position);
+        while (wrapped.hasRemaining()) {
+            channel.write(wrapped);
+        }
+        bytes += position;
+        position = 0;
+    }
+}
@@ -0,0 +1,251 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Журнал на промените в каталога (append-only).
+ *
+ * Всяка промяна се дописва веднага като един CSV ред:
+ * <pre>
+ *   номер,ОПЕРАЦИЯ,аргументи...
+ *   12,ADD,SONG,Мария,Меди,Чалга,2022,3.00,Single
+ *   13,PL_ADD,Любими,Мария
+ * </pre>
+ * Номерата растат непрекъснато. Snapshot-ът (CatalogSnapshot) помни до кой
+ * номер е включил промените, така че при стартиране се прилагат само
+ * по-новите записи.
+ *
+ * При компактиране текущият файл се преименува на сегмент
+ * ({@code <име>.<последен номер>}) и се започва нов. Сегментът се изтрива,
+ * след като новият snapshot е записан.
+ */
+public class CatalogJournal implements Closeable {
+    private final Path path;
+    private FileChannel channel;
+    private long lastSeq;
+    private long recordsInFile;
+
+    // Буферите се преизползват за всички записи
+    private final StringBuilder line = new StringBuilder(256);
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+
+    public CatalogJournal(Path path, long lastSeq) throws IOException {
+        this.path = path;
+        this.lastSeq = lastSeq;
+        dropTornTail(path);
+        this.channel = openForAppend(path);
+    }
+
+    public long lastSeq() {
+        return lastSeq;
+    }
+
+    /** Брой записи в текущия файл (след последното компактиране). */
+    public long recordsInFile() {
+        return recordsInFile;
+    }
+
+    // ==================== ЗАПИС ====================
+
+    public void append(String op, String... args) throws IOException {
+        startRecord(op);
+        for (String arg : args) {
+            line.append(',');
+            CsvCodec.appendField(line, arg);
+        }
+        endRecord();
+    }
+
+    /** Запис с обект - полетата на обекта са в края на реда. */
+    public void appendItem(String op, String arg, AudioItem item) throws IOException {
+        startRecord(op);
+        if (arg != null) {
+            line.append(',');
+            CsvCodec.appendField(line, arg);
+        }
+        line.append(',');
+        item.appendCSV(line);
+        endRecord();
+    }
+
+    /** Записва натрупаните записи във файла. */
+    public void flush() throws IOException {
+        pending.flip();
+        while (pending.hasRemaining()) {
+            channel.write(pending);
+        }
+        pending.clear();
+    }
+
+    private void startRecord(String op) {
+        line.setLength(0);
+        line.append(++lastSeq).append(',').append(op);
+    }
+
+    private void endRecord() throws IOException {
+        line.append('\n');
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > pending.remaining()) {
+            flush();
+            if (bytes.length > pending.capacity()) {
+                pending = ByteBuffer.allocate(bytes.length);
+            }
+        }
+        pending.put(bytes);
+        recordsInFile++;
+    }
+
+    /**
+     * Затваря текущия файл като сегмент и започва нов.
+     * Връща пътя до сегмента.
+     */
+    public Path rotate() throws IOException {
+        flush();
+        channel.close();
+        Path segment = path.resolveSibling(path.getFileName() + "." + lastSeq);
+        Files.move(path, segment, StandardCopyOption.REPLACE_EXISTING);
+        channel = openForAppend(path);
+        recordsInFile = 0;
+        return segment;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.force(true);
+        channel.close();
+    }
+
+    private static FileChannel openForAppend(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Отрязва недописания последен ред (срив по време на запис) - иначе
+     * следващият запис би се залепил за него и двата биха се изгубили.
+     */
+    private static void dropTornTail(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocate(4096);
+            long end = file.size();
+            while (end > 0) {
+                long start = Math.max(0, end - buf.capacity());
+                buf.clear().limit((int) (end - start));
+                while (buf.hasRemaining() && file.read(buf, start + buf.position()) >= 0) {
+                    // четем до края на парчето
+                }
+                for (int i = buf.position() - 1; i >= 0; i--) {
+                    if (buf.get(i) == '\n') {
+                        if (start + i + 1 < file.size()) {
+                            file.truncate(start + i + 1);
+                        }
+                        return;
+                    }
+                }
+                end = start;
+            }
+            file.truncate(0); // нито един цял ред
+        }
+    }
+
+    // ==================== ЧЕТЕНЕ ====================
+
+    /** Сегментите (по ред на номерата) и текущият файл, ако съществуват. */
+    public static List<Path> files(Path path) throws IOException {
+        String prefix = path.getFileName() + ".";
+        Path dir = path.toAbsolutePath().getParent();
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*")) {
+            for (Path p : stream) {
+                try {
+                    segments.put(Long.parseLong(p.getFileName().toString().substring(prefix.length())), p);
+                } catch (NumberFormatException e) {
+                    // друг файл (напр. .bak) - не е сегмент
+                }
+            }
+        }
+        List<Path> files = new ArrayList<>(segments.values());
+        if (Files.exists(path)) {
+            files.add(path);
+        }
+        return files;
+    }
+
+    /**
+     * Подава на {@code apply} полетата на всеки запис с номер > afterSeq.
+     * Недописан последен ред (срив по време на запис) и редове без
+     * валиден номер и операция се пропускат с предупреждение.
+     * Връща най-големия срещнат номер.
+     */
+    public static long replay(Path path, long afterSeq, Consumer<String[]> apply) throws IOException {
+        return read(path, afterSeq, apply, true);
+    }
+
+    private static long read(Path path, long afterSeq, Consumer<String[]> apply, boolean warn) throws IOException {
+        long maxSeq = afterSeq;
+        for (Path file : files(path)) {
+            String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            int start = 0;
+            int end;
+            while ((end = content.indexOf('\n', start)) >= 0) {
+                String record = content.substring(start, end);
+                start = end + 1;
+                if (record.isEmpty()) {
+                    continue;
+                }
+                String[] parts = CsvCodec.split(record);
+                long seq;
+                try {
+                    seq = Long.parseLong(parts[0]);
+                } catch (NumberFormatException e) {
+                    seq = -1;
+                }
+                if (seq < 0 || parts.length < 2) {
+                    if (warn) {
+                        System.out.println("⚠️ Пропуснат повреден запис в журнала " + file.getFileName()
+                            + ": " + record);
+                    }
+                    continue;
+                }
+                if (seq > afterSeq) {
+                    apply.accept(parts);
+                }
+                maxSeq = Math.max(maxSeq, seq);
+            }
+        }
+        return maxSeq;
+    }
+
+    /**
+     * Номерът на последния запис с операция {@code op} (напр. отметката
+     * SAVED), или 0, ако няма такъв.
+     */
+    public static long lastSeqOf(Path path, String op) throws IOException {
+        long[] last = {0};
+        read(path, 0, parts -> {
+            if (parts[1].equals(op)) {
+                last[0] = Long.parseLong(parts[0]);
+            }
+        }, false);
+        return last[0];
+    }
+
+    /** Изтрива сегментите, които вече са включени в snapshot до номер seq. */
+    public static void deleteSegmentsUpTo(Path path, long seq) throws IOException {
+        String prefix = path.getFileName() + ".";
+        for (Path file : files(path)) {
+            String name = file.getFileName().toString();
+            if (name.startsWith(prefix) && Long.parseLong(name.substring(prefix.length())) <= seq) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -1,332 +1,876 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class CatalogManager {
     private List<AudioItem> catalog;
-    private Map<String, List<AudioItem>> playlists;
+    private Map<String, Playlist> playlists;
+    private final TitleIndex titleIndex = new TitleIndex();
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final AutocompleteIndex autocomplete = new AutocompleteIndex();
+    private final AttributeIndex attributeIndex = new AttributeIndex();
+    private final SortedViews sortedViews = new SortedViews();
+    private final CatalogStatistics statistics = new CatalogStatistics();
+    private final PlaylistMembership membership = new PlaylistMembership();
+    // Брой извиквания и времена на публичните операции (виж CatalogMetrics)
+    private final CatalogMetrics metrics = new CatalogMetrics();
+    private final QueryPlanner planner;
+    // Избраният ред за показване на каталога и плейлистите (null = реда на добавяне).
+    // Важи само за текущата сесия - не се пази в журнала, snapshot-а и файловете.
+    private SortedViews.Order catalogOrder;
+    private final Map<String, SortedViews.Order> playlistOrders = new HashMap<>();
+    // Идентификатор (AudioItem.getId) -> обект; при еднакво съдържание - първият добавен
+    private final Map<Long, AudioItem> idIndex = new HashMap<>();
+    private long nextSeq = 0;
+
+    // Журнал на промените (виж openJournal); null, докато не е отворен
+    private static final int COMPACT_THRESHOLD = 10_000;
+    private CatalogJournal journal;
+    private Path journalPath;
+    private Path snapshotPath;
+    private long snapshotSeq = 0;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "journal-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+    private Future<?> compaction;
+    // При прилагане на журнала съобщенията на операциите не се показват
+    private boolean quiet = false;
 
     public CatalogManager() {
         this.catalog = new ArrayList<>();
         this.playlists = new HashMap<>();
+        this.planner = new QueryPlanner(catalog, titleIndex, attributeIndex, searchIndex, sortedViews);
     }
 
     // ==================== УПРАВЛЕНИЕ НА ОБЕКТИ ====================
 
     public void addItem(AudioItem item) {
-        if (item == null) {
-            System.out.println("❌ Невалиден обект!");
-            return;
+        long opStart = metrics.start("addItem");
+        try {
+            if (item == null) {
+                info("❌ Невалиден обект!");
+                return;
+            }
+            catalog.add(item);
+            indexItem(item);
+            recordItems("ADD", null, Collections.singletonList(item));
+            info("✅ Успешно добавено: " + item.getTitle());
+        } finally {
+            metrics.record("addItem", opStart);
         }
-        catalog.add(item);
-        System.out.println("✅ Успешно добавено: " + item.getTitle());
     }
 
+    /**
+     * Изтрива всички обекти с даденото заглавие (дублираните заглавия
+     * са позволени, затова се махат всички).
+     */
     public void deleteItem(String title) {
-        boolean removed = catalog.removeIf(item -> 
-            item.getTitle().equalsIgnoreCase(title));
+        long opStart = metrics.start("deleteItem");
+        try {
+            List<AudioItem> matches = titleIndex.all(title);
+            metrics.items("deleteItem", matches.size());
         
-        if (removed) {
-            // Премахваме обекта и от всички плейлисти
-            int playlistsAffected = 0;
-            for (List<AudioItem> playlist : playlists.values()) {
-                boolean playlistRemoved = playlist.removeIf(
-                    item -> item.getTitle().equalsIgnoreCase(title)
-                );
-                if (playlistRemoved) {
-                    playlistsAffected++;
+            if (!matches.isEmpty()) {
+                Set<AudioItem> doomed = Collections.newSetFromMap(new IdentityHashMap<>());
+                doomed.addAll(matches);
+                catalog.removeIf(doomed::contains);
+                matches.forEach(this::unindexItem);
+
+                // Премахваме обекта и от плейлистите, които го съдържат (те държат
+                // същите обекти) - обратният индекс казва кои са
+                Set<String> affected = new HashSet<>();
+                for (AudioItem item : matches) {
+                    affected.addAll(membership.playlistsOf(item));
                 }
-            }
+                for (String name : affected) {
+                    for (AudioItem item : matches) {
+                        removeFromList(name, playlists.get(name), item);
+                    }
+                }
+                int playlistsAffected = affected.size();
 
-            System.out.println("🗑️ Обектът е изтрит от каталога: " + title);
-            if (playlistsAffected > 0) {
-                System.out.println("ℹ️ Премахнат е и от " + playlistsAffected + " плейлист(а).");
+                record("DELETE", title);
+                info("🗑️ Обектът е изтрит от каталога: " + title);
+                if (playlistsAffected > 0) {
+                    info("ℹ️ Премахнат е и от " + playlistsAffected + " плейлист(а).");
+                }
+            } else {
+                info("❌ Обектът не е намерен: " + title);
             }
-        } else {
-            System.out.println("❌ Обектът не е намерен: " + title);
+        } finally {
+            metrics.record("deleteItem", opStart);
         }
     }
 
     public void showAll() {
-        System.out.println("\n╔════════════════════════════════════════════════╗");
-        System.out.println("║         📚 ЦЕЛИЯТ КАТАЛОГ                      ║");
-        System.out.println("╚════════════════════════════════════════════════╝");
+        long opStart = metrics.start("showAll");
+        try {
+            System.out.println("\n╔════════════════════════════════════════════════╗");
+            System.out.println("║         📚 ЦЕЛИЯТ КАТАЛОГ                      ║");
+            System.out.println("╚════════════════════════════════════════════════╝");
         
-        if (catalog.isEmpty()) {
-            System.out.println("  Каталогът е празен.");
-            return;
+            if (catalog.isEmpty()) {
+                System.out.println("  Каталогът е празен.");
+                return;
+            }
+
+            // Групиране по категория (в избрания ред на сортиране)
+            Map<AudioCategory, List<AudioItem>> grouped = listCatalog(null, Integer.MAX_VALUE).items.stream()
+                .collect(Collectors.groupingBy(AudioItem::getCategory));
+
+            for (AudioCategory cat : AudioCategory.values()) {
+                List<AudioItem> items = grouped.get(cat);
+                if (items != null && !items.isEmpty()) {
+                    System.out.println("\n  === " + cat.getBgName() + " (" + items.size() + ") ===");
+                    items.forEach(item -> System.out.println("  " + item));
+                }
+            }
+        
+            System.out.println("\n  Общо обекти: " + catalog.size());
+        } finally {
+            metrics.record("showAll", opStart);
         }
+    }
+
+    // ==================== ЗАЯВКИ ====================
 
-        // Групиране по категория
-        Map<AudioCategory, List<AudioItem>> grouped = catalog.stream()
-            .collect(Collectors.groupingBy(AudioItem::getCategory));
+    // Заявките връщат страница от обекти (виж QueryPage) - без извеждане и без
+    // форматиране. token е nextToken на предишната страница (null за първата).
+    // Индексите се обхождат от курсора нататък - страницата не копира и не
+    // сортира всички резултати.
+    // Невалиден token или limit < 1 дават IllegalArgumentException.
 
-        for (AudioCategory cat : AudioCategory.values()) {
-            List<AudioItem> items = grouped.get(cat);
-            if (items != null && !items.isEmpty()) {
-                System.out.println("\n  === " + cat.getBgName() + " (" + items.size() + ") ===");
-                items.forEach(item -> System.out.println("  " + item));
+    public QueryPage search(String query, String token, int limit) {
+        long opStart = metrics.start("search");
+        try {
+            return counted("search", QueryPage.bySeq((afterSeq, max) -> searchIndex.searchAfter(query, afterSeq, max),
+                () -> searchIndex.count(query), token, checkLimit(limit)));
+        } finally {
+            metrics.record("search", opStart);
+        }
+    }
+
+    public QueryPage findByCategory(AudioCategory category, String token, int limit) {
+        long opStart = metrics.start("findByCategory");
+        try {
+            return counted("findByCategory", QueryPage.bySeq(attributeIndex.viewByCategory(category), token, checkLimit(limit)));
+        } finally {
+            metrics.record("findByCategory", opStart);
+        }
+    }
+
+    public QueryPage findByGenre(String genre, String token, int limit) {
+        long opStart = metrics.start("findByGenre");
+        try {
+            return counted("findByGenre", QueryPage.bySeq(attributeIndex.viewByGenre(genre), token, checkLimit(limit)));
+        } finally {
+            metrics.record("findByGenre", opStart);
+        }
+    }
+
+    public QueryPage findByAuthor(String author, String token, int limit) {
+        long opStart = metrics.start("findByAuthor");
+        try {
+            return counted("findByAuthor", QueryPage.bySeq(attributeIndex.viewByAuthor(author), token, checkLimit(limit)));
+        } finally {
+            metrics.record("findByAuthor", opStart);
+        }
+    }
+
+    public QueryPage findByYear(int year, String token, int limit) {
+        long opStart = metrics.start("findByYear");
+        try {
+            return counted("findByYear", QueryPage.bySeq(attributeIndex.viewByYear(year), token, checkLimit(limit)));
+        } finally {
+            metrics.record("findByYear", opStart);
+        }
+    }
+
+    public QueryPage findByYearRange(int startYear, int endYear, String token, int limit) {
+        long opStart = metrics.start("findByYearRange");
+        try {
+            return counted("findByYearRange", QueryPage.bySeq(
+                (afterSeq, max) -> attributeIndex.byYearRangeAfter(startYear, endYear, afterSeq, max),
+                () -> attributeIndex.countYearRange(startYear, endYear), token, checkLimit(limit)));
+        } finally {
+            metrics.record("findByYearRange", opStart);
+        }
+    }
+
+    /**
+     * Каталогът в избрания ред (виж sortCatalog). При сортиран ред страницата
+     * се чете направо от поддържания изглед, без копиране на каталога.
+     */
+    public QueryPage listCatalog(String token, int limit) {
+        long opStart = metrics.start("listCatalog");
+        try {
+            if (catalogOrder == null) {
+                return counted("listCatalog", QueryPage.bySeq(catalog, token, checkLimit(limit)));
             }
+            return counted("listCatalog", QueryPage.sorted(sortedViews.view(catalogOrder, catalog), catalogOrder, token, checkLimit(limit)));
+        } finally {
+            metrics.record("listCatalog", opStart);
         }
-        
-        System.out.println("\n  Общо обекти: " + catalog.size());
+    }
+
+    /** Плейлистът в избрания ред; null, ако не съществува. */
+    public QueryPage listPlaylist(String name, String token, int limit) {
+        long opStart = metrics.start("listPlaylist");
+        try {
+            List<AudioItem> list = playlists.get(name);
+            if (list == null) {
+                return null;
+            }
+            return counted("listPlaylist", QueryPage.byPosition(inDisplayOrder(name, list), token, checkLimit(limit)));
+        } finally {
+            metrics.record("listPlaylist", opStart);
+        }
+    }
+
+    /**
+     * Плейлистът в реда, в който се показва (виж sortPlaylist) - така се и
+     * експортира. null, ако не съществува.
+     */
+    public List<AudioItem> getPlaylistInDisplayOrder(String name) {
+        List<AudioItem> list = playlists.get(name);
+        return list == null ? null : Collections.unmodifiableList(inDisplayOrder(name, list));
+    }
+
+    private List<AudioItem> inDisplayOrder(String name, List<AudioItem> list) {
+        SortedViews.Order order = playlistOrders.get(name);
+        if (order == null) {
+            return list;
+        }
+        // Плейлистите са малки - сортира се копие
+        List<AudioItem> sorted = new ArrayList<>(list);
+        sorted.sort(order.comparator());
+        return sorted;
+    }
+
+    /** Записва в метриките колко обекта е върнала страницата. */
+    private QueryPage counted(String op, QueryPage page) {
+        metrics.items(op, page.items.size());
+        return page;
+    }
+
+    private static int checkLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit трябва да е поне 1: " + limit);
+        }
+        return limit;
     }
 
     // ==================== ТЪРСЕНЕ ====================
 
     public void searchGeneral(String query) {
-        System.out.println("\n🔍 Търсене за: '" + query + "'");
-        System.out.println("─".repeat(50));
+        long opStart = metrics.start("searchGeneral");
+        try {
+            System.out.println("\n🔍 Търсене за: '" + query + "'");
+            System.out.println("─".repeat(50));
         
-        String q = query.toLowerCase();
-        List<AudioItem> results = catalog.stream()
-            .filter(item -> 
-                item.getTitle().toLowerCase().contains(q) ||
-                item.getAuthor().toLowerCase().contains(q) ||
-                item.getGenre().toLowerCase().contains(q))
-            .collect(Collectors.toList());
+            QueryPage results = search(query, null, Integer.MAX_VALUE);
+
+            if (results.total == 0) {
+                System.out.println("❌ Нищо не е намерено.");
+                List<AutocompleteIndex.Suggestion> suggestions = autocomplete.fuzzy(query, 5);
+                if (!suggestions.isEmpty()) {
+                    System.out.println("💡 Може би търсите:");
+                    suggestions.forEach(s -> System.out.println("   • " + s));
+                }
+            } else {
+                System.out.println("✅ Намерени " + results.total + " резултата:");
+                results.print();
+            }
+        } finally {
+            metrics.record("searchGeneral", opStart);
+        }
+    }
 
-        if (results.isEmpty()) {
-            System.out.println("❌ Нищо не е намерено.");
-        } else {
-            System.out.println("✅ Намерени " + results.size() + " резултата:");
-            results.forEach(System.out::println);
+    /**
+     * До k подсказки за заглавие или автор по начало на текста, а ако не
+     * стигат - и с правописни грешки (виж AutocompleteIndex).
+     */
+    public List<AutocompleteIndex.Suggestion> suggest(String text, int k) {
+        long opStart = metrics.start("suggest");
+        try {
+            return autocomplete.suggest(text, k);
+        } finally {
+            metrics.record("suggest", opStart);
         }
     }
 
     // ==================== ФИЛТРИРАНЕ ====================
 
     public void filterByCategory(AudioCategory category) {
-        System.out.println("\n📂 Филтър: " + category.getBgName());
-        System.out.println("─".repeat(50));
+        long opStart = metrics.start("filterByCategory");
+        try {
+            System.out.println("\n📂 Филтър: " + category.getBgName());
+            System.out.println("─".repeat(50));
         
-        List<AudioItem> filtered = catalog.stream()
-            .filter(item -> item.getCategory() == category)
-            .collect(Collectors.toList());
+            QueryPage filtered = findByCategory(category, null, Integer.MAX_VALUE);
 
-        if (filtered.isEmpty()) {
-            System.out.println("Няма обекти от тази категория.");
-        } else {
-            filtered.forEach(System.out::println);
-            System.out.println("\nОбщо: " + filtered.size());
+            if (filtered.total == 0) {
+                System.out.println("Няма обекти от тази категория.");
+            } else {
+                filtered.print();
+                System.out.println("\nОбщо: " + filtered.total);
+            }
+        } finally {
+            metrics.record("filterByCategory", opStart);
         }
     }
 
     public void filterByGenre(String genre) {
-        System.out.println("\n🎸 Филтър по жанр: " + genre);
-        System.out.println("─".repeat(50));
+        long opStart = metrics.start("filterByGenre");
+        try {
+            System.out.println("\n🎸 Филтър по жанр: " + genre);
+            System.out.println("─".repeat(50));
         
-        catalog.stream()
-            .filter(item -> item.getGenre().equalsIgnoreCase(genre))
-            .forEach(System.out::println);
+            findByGenre(genre, null, Integer.MAX_VALUE).print();
+        } finally {
+            metrics.record("filterByGenre", opStart);
+        }
     }
 
     public void filterByAuthor(String author) {
-        System.out.println("\n👤 Филтър по автор: " + author);
-        System.out.println("─".repeat(50));
+        long opStart = metrics.start("filterByAuthor");
+        try {
+            System.out.println("\n👤 Филтър по автор: " + author);
+            System.out.println("─".repeat(50));
         
-        catalog.stream()
-            .filter(item -> item.getAuthor().equalsIgnoreCase(author))
-            .forEach(System.out::println);
+            findByAuthor(author, null, Integer.MAX_VALUE).print();
+        } finally {
+            metrics.record("filterByAuthor", opStart);
+        }
     }
 
     public void filterByYear(int year) {
-        System.out.println("\n📅 Филтър по година: " + year);
-        System.out.println("─".repeat(50));
+        long opStart = metrics.start("filterByYear");
+        try {
+            System.out.println("\n📅 Филтър по година: " + year);
+            System.out.println("─".repeat(50));
         
-        catalog.stream()
-            .filter(item -> item.getYear() == year)
-            .forEach(System.out::println);
+            findByYear(year, null, Integer.MAX_VALUE).print();
+        } finally {
+            metrics.record("filterByYear", opStart);
+        }
     }
 
     public void filterByYearRange(int startYear, int endYear) {
-        System.out.println("\n📅 Филтър: " + startYear + " - " + endYear);
-        System.out.println("─".repeat(50));
+        long opStart = metrics.start("filterByYearRange");
+        try {
+            System.out.println("\n📅 Филтър: " + startYear + " - " + endYear);
+            System.out.println("─".repeat(50));
         
-        catalog.stream()
-            .filter(item -> item.getYear() >= startYear && item.getYear() <= endYear)
-            .forEach(System.out::println);
+            findByYearRange(startYear, endYear, null, Integer.MAX_VALUE).print();
+        } finally {
+            metrics.record("filterByYearRange", opStart);
+        }
+    }
+
+    // ==================== СЪСТАВНИ ЗАЯВКИ ====================
+
+    /** Изпълнява заявката през QueryPlanner (виж Query за синтаксиса). */
+    public QueryPlanner.Result query(Query query) {
+        long opStart = metrics.start("query");
+        try {
+            QueryPlanner.Result result = planner.execute(query);
+            metrics.items("query", result.rowsScanned);
+            return result;
+        } finally {
+            metrics.record("query", opStart);
+        }
+    }
+
+    /**
+     * Изпълнява заявка в текстов вид и показва резултата. Ако текстът
+     * започва с EXPLAIN, първо се показва планът и прегледаните редове.
+     */
+    public void runQuery(String text) {
+        long opStart = metrics.start("runQuery");
+        try {
+            String trimmed = text.trim();
+            boolean explain = trimmed.regionMatches(true, 0, "EXPLAIN", 0, 7)
+                && (trimmed.length() == 7 || Character.isWhitespace(trimmed.charAt(7)));
+            Query query;
+            try {
+                query = Query.parse(explain ? trimmed.substring(7) : trimmed);
+            } catch (IllegalArgumentException e) {
+                System.out.println("❌ Невалидна заявка: " + e.getMessage());
+                return;
+            }
+
+            QueryPlanner.Result result = query(query);
+            System.out.println("\n🧮 Заявка: " + query);
+            System.out.println("─".repeat(50));
+            if (explain) {
+                System.out.println(result.explain());
+                System.out.println("─".repeat(50));
+            }
+            if (result.items.isEmpty()) {
+                System.out.println("❌ Нищо не е намерено.");
+            } else {
+                result.items.forEach(System.out::println);
+                System.out.println("\nОбщо: " + result.items.size());
+            }
+        } finally {
+            metrics.record("runQuery", opStart);
+        }
     }
 
     // ==================== СОРТИРАНЕ ====================
 
+    /**
+     * Показва каталога в избрания ред. Самият каталог не се пренарежда -
+     * редът идва от поддържан сортиран изглед (виж SortedViews). Редът
+     * важи до края на сесията; catalog.txt се записва в реда на добавяне.
+     */
     public void sortCatalog(String criteria) {
-        switch (criteria.toLowerCase()) {
-            case "title":
-            case "заглавие":
-                catalog.sort(Comparator.comparing(AudioItem::getTitle));
-                System.out.println("✅ Сортирано по заглавие (А-Я)");
-                break;
-            case "author":
-            case "автор":
-                catalog.sort(Comparator.comparing(AudioItem::getAuthor));
-                System.out.println("✅ Сортирано по автор (А-Я)");
-                break;
-            case "year":
-            case "година":
-                catalog.sort(Comparator.comparingInt(AudioItem::getYear));
-                System.out.println("✅ Сортирано по година (възходящо)");
-                break;
-            case "duration":
-            case "времетраене":
-                catalog.sort(Comparator.comparingDouble(AudioItem::getDuration));
-                System.out.println("✅ Сортирано по продължителност");
-                break;
-            default:
-                System.out.println("❌ Невалиден критерий за сортиране!");
+        long opStart = metrics.start("sortCatalog");
+        try {
+            SortedViews.Order order = SortedViews.Order.parse(criteria);
+            if (order == null) {
+                info("❌ Невалиден критерий за сортиране!");
                 return;
+            }
+            catalogOrder = order;
+            info("✅ Сортирано по " + order.getLabel());
+            if (!quiet) {
+                showAll();
+            }
+        } finally {
+            metrics.record("sortCatalog", opStart);
         }
-        showAll();
     }
 
+    /**
+     * Задава реда, в който се показва и експортира плейлистът до края на
+     * сесията. Собственият ред на плейлиста (в playlists.txt) не се променя.
+     */
     public void sortPlaylist(String playlistName, String criteria) {
-        if (!playlists.containsKey(playlistName)) {
-            System.out.println("❌ Няма такъв плейлист.");
-            return;
+        long opStart = metrics.start("sortPlaylist");
+        try {
+            if (!playlists.containsKey(playlistName)) {
+                info("❌ Няма такъв плейлист.");
+                return;
+            }
+
+            SortedViews.Order order = SortedViews.Order.parse(criteria);
+            if (order == null) {
+                info("❌ Невалиден критерий!");
+                return;
+            }
+            playlistOrders.put(playlistName, order);
+            info("✅ Плейлистът '" + playlistName + "' е сортиран.");
+            if (!quiet) {
+                showPlaylist(playlistName);
+            }
+        } finally {
+            metrics.record("sortPlaylist", opStart);
         }
+    }
 
-        List<AudioItem> playlist = playlists.get(playlistName);
-        
-        switch (criteria.toLowerCase()) {
-            case "title":
-            case "заглавие":
-                playlist.sort(Comparator.comparing(AudioItem::getTitle));
-                break;
-            case "author":
-            case "автор":
-                playlist.sort(Comparator.comparing(AudioItem::getAuthor));
-                break;
-            case "year":
-            case "година":
-                playlist.sort(Comparator.comparingInt(AudioItem::getYear));
-                break;
-            case "duration":
-            case "времетраене":
-                playlist.sort(Comparator.comparingDouble(AudioItem::getDuration));
-                break;
-            default:
+    // ==================== ТОП K ====================
+
+    /**
+     * Първите k обекта по критерия - descending дава най-големите (най-нови,
+     * най-дълги, Я-А). category и genre (null = всички) ограничават избора.
+     * Каталогът и избраният ред за показване не се променят.
+     *
+     * Без филтър се четат първите k от поддържания сортиран изглед. С филтър
+     * се избира по-евтиното от обхождане на изгледа до k съвпадения (около
+     * k * n / m реда при m кандидата) и ограничена купчина върху кандидатите
+     * от индекса на категорията или жанра (m log k, виж TopK).
+     */
+    public List<AudioItem> topK(SortedViews.Order order, boolean descending, AudioCategory category,
+                                String genre, int k) {
+        long opStart = metrics.start("topK");
+        try {
+            checkLimit(k);
+            Comparator<AudioItem> comparator = descending ? order.comparator().reversed() : order.comparator();
+            String genreKey = genre != null ? TitleIndex.fold(genre) : null;
+            Predicate<AudioItem> filter = category == null && genre == null ? null
+                : item -> (category == null || item.getCategory() == category)
+                    && (genreKey == null || TitleIndex.fold(item.getGenre()).equals(genreKey));
+
+            // Кандидатите - най-малкият от индексите на филтрите
+            Collection<AudioItem> candidates = catalog;
+            if (category != null && attributeIndex.countCategory(category) < candidates.size()) {
+                candidates = attributeIndex.viewByCategory(category);
+            }
+            if (genre != null && attributeIndex.countGenre(genre) < candidates.size()) {
+                candidates = attributeIndex.viewByGenre(genre);
+            }
+
+            int n = catalog.size();
+            int m = candidates.size();
+            double walkCost = (double) k * n / Math.max(1, m);
+            if (!sortedViews.isBuilt(order)) {
+                walkCost += n * log2(n);
+            }
+            List<AudioItem> results;
+            if (filter != null && walkCost > m * log2(k)) {
+                results = TopK.select(candidates, comparator, k, filter);
+                metrics.items("topK", m);
+            } else {
+                NavigableSet<AudioItem> view = sortedViews.view(order, catalog);
+                results = new ArrayList<>(Math.min(k, m));
+                int scanned = 0;
+                for (AudioItem item : descending ? view.descendingSet() : view) {
+                    if (results.size() >= k) {
+                        break;
+                    }
+                    scanned++;
+                    if (filter == null || filter.test(item)) {
+                        results.add(item);
+                    }
+                }
+                metrics.items("topK", scanned);
+            }
+            return results;
+        } finally {
+            metrics.record("topK", opStart);
+        }
+    }
+
+    private static double log2(int x) {
+        return Math.log(Math.max(2, x)) / Math.log(2);
+    }
+
+    public void showTopK(String criteria, boolean descending, AudioCategory category, String genre, int k) {
+        long opStart = metrics.start("showTopK");
+        try {
+            SortedViews.Order order = SortedViews.Order.parse(criteria);
+            if (order == null) {
                 System.out.println("❌ Невалиден критерий!");
                 return;
+            }
+            if (k < 1) {
+                System.out.println("❌ K трябва да е поне 1.");
+                return;
+            }
+
+            List<AudioItem> top = topK(order, descending, category, genre, k);
+            // Етикетът без посоката в скобите - тя зависи от descending
+            String by = order.getLabel().split(" \\(")[0];
+            System.out.println("\n🏆 Топ " + k + " по " + by + (descending ? ", низходящо" : ", възходящо")
+                + (category != null ? " | " + category.getBgName() : "")
+                + (genre != null ? " | жанр " + genre : ""));
+            System.out.println("─".repeat(50));
+            if (top.isEmpty()) {
+                System.out.println("❌ Нищо не е намерено.");
+                return;
+            }
+            int position = 1;
+            for (AudioItem item : top) {
+                System.out.println("  " + position++ + ". " + item);
+            }
+        } finally {
+            metrics.record("showTopK", opStart);
         }
-        
-        System.out.println("✅ Плейлистът '" + playlistName + "' е сортиран.");
-        showPlaylist(playlistName);
     }
 
     // ==================== ПЛЕЙЛИСТИ ====================
 
     public void createPlaylist(String name) {
-        if (name == null || name.trim().isEmpty()) {
-            System.out.println("❌ Името не може да бъде празно!");
-            return;
-        }
+        long opStart = metrics.start("createPlaylist");
+        try {
+            if (name == null || name.trim().isEmpty()) {
+                info("❌ Името не може да бъде празно!");
+                return;
+            }
 
-        if (playlists.containsKey(name)) {
-            System.out.println("⚠️ Вече съществува плейлист с това име!");
-            return;
-        }
+            if (playlists.containsKey(name)) {
+                info("⚠️ Вече съществува плейлист с това име!");
+                return;
+            }
 
-        playlists.put(name, new ArrayList<>());
-        System.out.println("✅ Плейлист '" + name + "' е създаден.");
+            playlists.put(name, new Playlist());
+            statistics.playlistCleared(name);
+            record("PL_CREATE", name);
+            info("✅ Плейлист '" + name + "' е създаден.");
+        } finally {
+            metrics.record("createPlaylist", opStart);
+        }
     }
 
     public void deletePlaylist(String name) {
-        if (playlists.remove(name) != null) {
-            System.out.println("🗑️ Плейлистът '" + name + "' е изтрит.");
-        } else {
-            System.out.println("❌ Няма такъв плейлист.");
+        long opStart = metrics.start("deletePlaylist");
+        try {
+            Playlist removed = playlists.remove(name);
+            if (removed != null) {
+                membership.playlistDeleted(name, removed);
+                playlistOrders.remove(name);
+                statistics.playlistDeleted(name);
+                record("PL_DELETE", name);
+                info("🗑️ Плейлистът '" + name + "' е изтрит.");
+            } else {
+                info("❌ Няма такъв плейлист.");
+            }
+        } finally {
+            metrics.record("deletePlaylist", opStart);
         }
     }
 
     public void addToPlaylist(String playlistName, String title) {
-        if (!playlists.containsKey(playlistName)) {
-            System.out.println("❌ Няма такъв плейлист.");
-            return;
-        }
+        long opStart = metrics.start("addToPlaylist");
+        try {
+            if (!playlists.containsKey(playlistName)) {
+                info("❌ Няма такъв плейлист.");
+                return;
+            }
 
-        AudioItem item = catalog.stream()
-                .filter(i -> i.getTitle().equalsIgnoreCase(title))
-                .findFirst()
-                .orElse(null);
+            // При дублирани заглавия се взима най-рано добавеният обект
+            AudioItem item = titleIndex.first(title);
 
-        if (item != null) {
-            List<AudioItem> playlist = playlists.get(playlistName);
-            if (!playlist.contains(item)) {
-                playlist.add(item);
-                System.out.println("✅ '" + title + "' добавено в плейлист: " + playlistName);
+            if (item != null) {
+                Playlist playlist = playlists.get(playlistName);
+                if (!playlist.contains(item)) {
+                    addToList(playlistName, playlist, item);
+                    record("PL_ADD", playlistName, title);
+                    info("✅ '" + title + "' добавено в плейлист: " + playlistName);
+                } else {
+                    info("⚠️ Вече е в плейлиста!");
+                }
             } else {
-                System.out.println("⚠️ Вече е в плейлиста!");
+                info("❌ Обектът не е намерен в каталога.");
             }
-        } else {
-            System.out.println("❌ Обектът не е намерен в каталога.");
+        } finally {
+            metrics.record("addToPlaylist", opStart);
         }
     }
 
     public void removeFromPlaylist(String playlistName, String title) {
-        if (!playlists.containsKey(playlistName)) {
-            System.out.println("❌ Няма такъв плейлист.");
-            return;
-        }
+        long opStart = metrics.start("removeFromPlaylist");
+        try {
+            if (!playlists.containsKey(playlistName)) {
+                info("❌ Няма такъв плейлист.");
+                return;
+            }
 
-        boolean removed = playlists.get(playlistName).removeIf(
-            i -> i.getTitle().equalsIgnoreCase(title));
+            // Плейлистите съдържат само обекти от каталога - всички с това заглавие са в индекса
+            Playlist playlist = playlists.get(playlistName);
+            boolean removed = false;
+            for (AudioItem item : titleIndex.all(title)) {
+                removed |= removeFromList(playlistName, playlist, item) > 0;
+            }
         
-        if (removed) {
-            System.out.println("🗑️ Премахнато от плейлиста: " + title);
-        } else {
-            System.out.println("❌ Обектът не е в този плейлист.");
+            if (removed) {
+                record("PL_REMOVE", playlistName, title);
+                info("🗑️ Премахнато от плейлиста: " + title);
+            } else {
+                info("❌ Обектът не е в този плейлист.");
+            }
+        } finally {
+            metrics.record("removeFromPlaylist", opStart);
         }
     }
 
     public void showPlaylist(String name) {
-        if (!playlists.containsKey(name)) {
-            System.out.println("❌ Плейлистът не съществува.");
-            return;
-        }
+        long opStart = metrics.start("showPlaylist");
+        try {
+            if (!playlists.containsKey(name)) {
+                System.out.println("❌ Плейлистът не съществува.");
+                return;
+            }
 
-        System.out.println("\n╔════════════════════════════════════════════════╗");
-        System.out.println("║  🎵 Плейлист: " + name);
-        System.out.println("╚════════════════════════════════════════════════╝");
+            System.out.println("\n╔════════════════════════════════════════════════╗");
+            System.out.println("║  🎵 Плейлист: " + name);
+            System.out.println("╚════════════════════════════════════════════════╝");
 
-        List<AudioItem> list = playlists.get(name);
-        if (list.isEmpty()) {
-            System.out.println("  (празен)");
-        } else {
-            double totalDuration = list.stream()
-                .mapToDouble(AudioItem::getDuration)
-                .sum();
-            
-            System.out.println("  Брой песни: " + list.size());
-            System.out.println("  Обща продължителност: " + String.format("%.2f мин", totalDuration));
-            System.out.println();
+            QueryPage page = listPlaylist(name, null, Integer.MAX_VALUE);
+            if (page.total == 0) {
+                System.out.println("  (празен)");
+            } else {
+                double totalDuration = statistics.playlistDuration(name);
+
+                System.out.println("  Брой песни: " + page.total);
+                System.out.println("  Обща продължителност: " + String.format("%.2f мин", totalDuration));
+                System.out.println();
             
-            for (int i = 0; i < list.size(); i++) {
-                System.out.println("  " + (i + 1) + ". " + list.get(i));
+                int position = 1;
+                for (AudioItem item : page.items) {
+                    System.out.println("  " + position++ + ". " + item);
+                }
+            }
+        } finally {
+            metrics.record("showPlaylist", opStart);
+        }
+    }
+
+    /** Имената на плейлистите, които съдържат обект с това заглавие (по азбучен ред). */
+    public List<String> playlistsContaining(String title) {
+        long opStart = metrics.start("playlistsContaining");
+        try {
+            Set<String> names = new TreeSet<>();
+            for (AudioItem item : titleIndex.all(title)) {
+                names.addAll(membership.playlistsOf(item));
+            }
+            return new ArrayList<>(names);
+        } finally {
+            metrics.record("playlistsContaining", opStart);
+        }
+    }
+
+    public void showPlaylistsContaining(String title) {
+        long opStart = metrics.start("showPlaylistsContaining");
+        try {
+            if (!titleIndex.contains(title)) {
+                System.out.println("❌ Обектът не е намерен в каталога.");
+                return;
+            }
+            List<String> names = playlistsContaining(title);
+            if (names.isEmpty()) {
+                System.out.println("ℹ️ '" + title + "' не е в нито един плейлист.");
+            } else {
+                System.out.println("\n🔎 '" + title + "' е в " + names.size() + " плейлист(а):");
+                names.forEach(name -> System.out.println("  • " + name));
             }
+        } finally {
+            metrics.record("showPlaylistsContaining", opStart);
         }
     }
 
+    /**
+     * Премества обекта от позиция from на позиция to (от 1, както ги
+     * показва showPlaylist). Ако плейлистът е сортиран, сортираният ред
+     * става собствен ред на плейлиста и преместването е спрямо него - в
+     * журнала новият ред се записва отделно (PL_REORDER), преди PL_MOVE.
+     */
+    public void movePlaylistItem(String playlistName, int from, int to) {
+        long opStart = metrics.start("movePlaylistItem");
+        try {
+            Playlist playlist = playlists.get(playlistName);
+            if (playlist == null) {
+                info("❌ Няма такъв плейлист.");
+                return;
+            }
+            if (from < 1 || from > playlist.size() || to < 1 || to > playlist.size()) {
+                info("❌ Позицията трябва да е между 1 и " + playlist.size() + ".");
+                return;
+            }
+
+            SortedViews.Order order = playlistOrders.remove(playlistName);
+            if (order != null) {
+                List<AudioItem> sorted = new ArrayList<>(playlist);
+                sorted.sort(order.comparator());
+                playlist.clear();
+                playlist.addAll(sorted);
+                String[] args = new String[sorted.size() + 1];
+                args[0] = playlistName;
+                for (int i = 0; i < sorted.size(); i++) {
+                    args[i + 1] = Long.toHexString(sorted.get(i).getId());
+                }
+                record("PL_REORDER", args);
+            }
+            AudioItem item = playlist.get(from - 1);
+            playlist.move(from - 1, to - 1);
+            record("PL_MOVE", playlistName, String.valueOf(from), String.valueOf(to));
+            info("↕️ '" + item.getTitle() + "' е преместено на позиция " + to + ".");
+        } finally {
+            metrics.record("movePlaylistItem", opStart);
+        }
+    }
+
+    /**
+     * Подрежда плейлиста по идентификаторите от запис PL_REORDER. Обектите
+     * трябва да са същите като в плейлиста - иначе записът е повреден.
+     */
+    private void reorderPlaylist(String playlistName, String[] hexIds) {
+        Playlist playlist = playlists.get(playlistName);
+        if (playlist == null || playlist.size() != hexIds.length) {
+            throw new IllegalArgumentException("Плейлистът не съвпада със записа");
+        }
+        Map<Long, Deque<AudioItem>> byId = new HashMap<>();
+        for (AudioItem item : playlist) {
+            byId.computeIfAbsent(item.getId(), k -> new ArrayDeque<>()).add(item);
+        }
+        List<AudioItem> reordered = new ArrayList<>(hexIds.length);
+        for (String hexId : hexIds) {
+            Deque<AudioItem> same = byId.get(Long.parseUnsignedLong(hexId, 16));
+            if (same == null || same.isEmpty()) {
+                throw new IllegalArgumentException("Непознат обект в плейлиста: " + hexId);
+            }
+            reordered.add(same.poll());
+        }
+        playlistOrders.remove(playlistName);
+        playlist.clear();
+        playlist.addAll(reordered);
+    }
+
+    /** Добавя обект в плейлист и обновява статистиката и обратния индекс. */
+    private void addToList(String name, List<AudioItem> playlist, AudioItem item) {
+        playlist.add(item);
+        statistics.playlistItemAdded(name, item);
+        membership.added(name, item);
+    }
+
+    /** Премахва всички срещания на обекта от плейлиста; връща броя им. */
+    private int removeFromList(String name, Playlist playlist, AudioItem item) {
+        int removed = playlist.removeAll(item);
+        for (int i = 0; i < removed; i++) {
+            statistics.playlistItemRemoved(name, item);
+            membership.removed(name, item);
+        }
+        return removed;
+    }
+
     public void listAllPlaylists() {
-        System.out.println("\n📋 Всички плейлисти:");
-        if (playlists.isEmpty()) {
-            System.out.println("  Няма създадени плейлисти.");
-        } else {
-            playlists.forEach((name, items) -> 
-                System.out.println("  • " + name + " (" + items.size() + " обекта)")
-            );
+        long opStart = metrics.start("listAllPlaylists");
+        try {
+            System.out.println("\n📋 Всички плейлисти:");
+            if (playlists.isEmpty()) {
+                System.out.println("  Няма създадени плейлисти.");
+            } else {
+                playlists.forEach((name, items) ->
+                    System.out.println("  • " + name + " (" + items.size() + " обекта, "
+                        + String.format("%.2f мин", statistics.playlistDuration(name)) + ")")
+                );
+            }
+        } finally {
+            metrics.record("listAllPlaylists", opStart);
         }
     }
 
     // ==================== РАБОТА С ФАЙЛОВЕ ====================
 
-    public void saveToFile(String filename, List<AudioItem> list) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
-            for (AudioItem item : list) {
-                writer.println(item.toCSV());
+    /**
+     * Записва обектите като CSV (UTF-8) през BulkCsvWriter - атомарно, чрез
+     * временен файл, така че при грешка старият файл остава непокътнат.
+     * Връща дали записът е успешен.
+     */
+    public boolean saveToFile(String filename, List<AudioItem> list) {
+        long opStart = metrics.start("saveToFile");
+        boolean saved = false;
+        try {
+            try (BulkCsvWriter writer = BulkCsvWriter.open(Paths.get(filename))) {
+                for (AudioItem item : list) {
+                    writer.writeItem(item);
+                }
+                writer.commit();
+                System.out.println("💾 Успешно записано във файл: " + filename);
+                printWriteSpeed(writer);
+                metrics.bytesWritten("saveToFile", writer.bytes());
+                saved = true;
+            } catch (IOException e) {
+                System.out.println("❌ Грешка при запис: " + e.getMessage());
             }
-            System.out.println("💾 Успешно записано във файл: " + filename);
-        } catch (IOException e) {
-            System.out.println("❌ Грешка при запис: " + e.getMessage());
+            metrics.items("saveToFile", list.size());
+            return saved;
+        } finally {
+            metrics.record("saveToFile", opStart);
         }
     }
 
@@ -334,114 +878,311 @@ public class CatalogManager {
      * Записва всички плейлисти в един текстов файл.
      * Формат:
      * PLAYLIST:Име
-     * SONG,...
-     * ALBUM,...
+     * @идентификатор (AudioItem.getId в шестнадесетичен вид)
+     * @идентификатор
      * (празен ред между плейлистите)
+     * Обектите не се повтарят - при зареждане се намират в каталога.
+     * Връща дали записът е успешен.
      */
-    public void saveAllPlaylists(String filename) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
-            for (Map.Entry<String, List<AudioItem>> entry : playlists.entrySet()) {
-                String name = entry.getKey();
-                List<AudioItem> items = entry.getValue();
-
-                writer.println("PLAYLIST:" + name);
-                for (AudioItem item : items) {
-                    writer.println(item.toCSV());
+    public boolean saveAllPlaylists(String filename) {
+        long opStart = metrics.start("saveAllPlaylists");
+        try {
+            try (BulkCsvWriter writer = BulkCsvWriter.open(Paths.get(filename))) {
+                StringBuilder line = new StringBuilder(24);
+                for (Map.Entry<String, Playlist> entry : playlists.entrySet()) {
+                    String name = entry.getKey();
+                    List<AudioItem> items = entry.getValue();
+
+                    writer.writeLine("PLAYLIST:" + name);
+                    for (AudioItem item : items) {
+                        line.setLength(0);
+                        line.append('@').append(Long.toHexString(item.getId()));
+                        writer.writeLine(line);
+                    }
+                    metrics.items("saveAllPlaylists", items.size());
+                    writer.writeLine(""); // празен ред между плейлистите
                 }
-                writer.println(); // празен ред между плейлистите
+                writer.commit();
+
+                System.out.println("💾 Всички плейлисти са записани във файл: " + filename);
+                printWriteSpeed(writer);
+                metrics.bytesWritten("saveAllPlaylists", writer.bytes());
+                return true;
+            } catch (IOException e) {
+                System.out.println("❌ Грешка при запис на плейлисти: " + e.getMessage());
+                return false;
             }
+        } finally {
+            metrics.record("saveAllPlaylists", opStart);
+        }
+    }
 
-            System.out.println("💾 Всички плейлисти са записани във файл: " + filename);
+    /**
+     * Записва обектите в компресиран файл (CompressedCatalogFile). Той се
+     * зарежда със същите loadCatalogFromFile и loadPlaylistFromFile -
+     * форматът се разпознава по съдържанието, а не по името.
+     */
+    public void saveCompressed(String filename, List<AudioItem> list) {
+        long opStart = metrics.start("saveCompressed");
+        try {
+            long start = System.nanoTime();
+            long bytes = CompressedCatalogFile.write(Paths.get(filename), list);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println("💾 Успешно записано във файл: " + filename);
+            System.out.println(String.format("🗜️  %d обекта, %.2f MB за %d ms", list.size(),
+                bytes / 1048576.0, millis));
+            metrics.items("saveCompressed", list.size());
+            metrics.bytesWritten("saveCompressed", bytes);
         } catch (IOException e) {
-            System.out.println("❌ Грешка при запис на плейлисти: " + e.getMessage());
+            System.out.println("❌ Грешка при запис: " + e.getMessage());
+        } finally {
+            metrics.record("saveCompressed", opStart);
         }
     }
 
+    private static void printWriteSpeed(BulkCsvWriter writer) {
+        System.out.println(String.format("⚡ %.2f MB за %d ms (%.1f MB/s)", writer.bytes() / 1048576.0,
+            writer.nanos() / 1_000_000, writer.megabytesPerSecond()));
+    }
+
+    /**
+     * Добавя обектите от CSV файла в каталога. Обект със същото съдържание
+     * като вече наличен (или като по-ранен ред от файла) се пропуска, така
+     * че повторното зареждане на същия или припокриващ се файл не добавя
+     * нищо.
+     */
     public void loadCatalogFromFile(String filename) {
-        List<AudioItem> loaded = loadListFromFile(filename);
-        if (!loaded.isEmpty()) {
-            catalog.addAll(loaded);
-            System.out.println("📂 Каталогът е зареден: " + loaded.size() + " обекта");
+        long opStart = metrics.start("loadCatalogFromFile");
+        try {
+            CsvFileLoader.Result result = loadListFromFile(filename);
+            List<AudioItem> loaded = result.items;
+            if (!loaded.isEmpty()) {
+                List<AudioItem> added = new ArrayList<>(loaded.size());
+                for (AudioItem item : loaded) {
+                    if (findSameContent(item) == null) {
+                        catalog.add(item);
+                        indexItem(item);
+                        added.add(item);
+                    }
+                }
+                int duplicates = loaded.size() - added.size();
+                recordItems("ADD", null, added);
+                System.out.println("📂 Каталогът е зареден: " + added.size() + " обекта"
+                    + (duplicates > 0 ? " (" + duplicates + " дубликата са пропуснати)" : ""));
+                System.out.println(String.format("⚡ %.2f MB за %d ms (%.1f MB/s)",
+                    result.bytes / 1048576.0, result.nanos / 1_000_000, result.megabytesPerSecond()));
+            }
+        } finally {
+            metrics.record("loadCatalogFromFile", opStart);
         }
     }
 
     public void loadPlaylistFromFile(String filename, String playlistName) {
-        List<AudioItem> loaded = loadListFromFile(filename);
-        if (!loaded.isEmpty()) {
-            createPlaylist(playlistName);
-            playlists.get(playlistName).addAll(loaded);
-            System.out.println("📂 Плейлист '" + playlistName + "' е зареден: " + loaded.size() + " обекта");
+        long opStart = metrics.start("loadPlaylistFromFile");
+        try {
+            List<AudioItem> loaded = loadListFromFile(filename).items;
+            if (!loaded.isEmpty()) {
+                createPlaylist(playlistName);
+                Playlist playlist = playlists.get(playlistName);
+                for (AudioItem item : loaded) {
+                    addToList(playlistName, playlist, resolveOrImport(item));
+                }
+                recordItems("PL_ITEM", playlistName, loaded);
+                System.out.println("📂 Плейлист '" + playlistName + "' е зареден: " + loaded.size() + " обекта");
+            }
+        } finally {
+            metrics.record("loadPlaylistFromFile", opStart);
+        }
+    }
+
+    /**
+     * Записва каталога и плейлистите като текстови файлове. Ако и двата
+     * записа успеят, в журнала се отбелязва SAVED - при стартиране от тези
+     * файлове (без snapshot) се прилагат само записите след отметката.
+     */
+    public void saveTextFiles(String catalogFile, String playlistsFile) {
+        boolean saved = saveToFile(catalogFile, catalog);
+        saved &= saveAllPlaylists(playlistsFile);
+        if (saved) {
+            record("SAVED");
         }
+        // snapshot-ът трябва да остане по-нов от текстовите файлове
+        compactJournal();
     }
 
     /**
      * Зарежда всички плейлисти от един текстов файл,
      * записан с формата на saveAllPlaylists.
+     * Редовете "@id" се намират в каталога (той трябва да е зареден преди
+     * това). Пълни CSV редове от стария формат също се приемат - заменят се
+     * със същия обект от каталога или се добавят в него.
      */
     public void loadAllPlaylists(String filename) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            String currentPlaylistName = null;
-            List<AudioItem> currentList = null;
-
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty()) {
-                    continue;
-                }
+        long opStart = metrics.start("loadAllPlaylists");
+        try {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8))) {
+                String line;
+                String currentPlaylistName = null;
+                List<AudioItem> currentList = null;
+                int missing = 0;
 
-                if (line.startsWith("PLAYLIST:")) {
-                    currentPlaylistName = line.substring("PLAYLIST:".length());
-                    if (currentPlaylistName == null || currentPlaylistName.trim().isEmpty()) {
-                        currentPlaylistName = null;
-                        currentList = null;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty()) {
                         continue;
                     }
 
-                    // ако вече съществува, не я презаписваме, а я допълваме
-                    playlists.putIfAbsent(currentPlaylistName, new ArrayList<>());
-                    currentList = playlists.get(currentPlaylistName);
-                } else if (currentPlaylistName != null && currentList != null) {
-                    AudioItem item = parseCSVLine(line);
-                    if (item != null) {
-                        currentList.add(item);
+                    if (line.startsWith("PLAYLIST:")) {
+                        currentPlaylistName = line.substring("PLAYLIST:".length());
+                        if (currentPlaylistName == null || currentPlaylistName.trim().isEmpty()) {
+                            currentPlaylistName = null;
+                            currentList = null;
+                            continue;
+                        }
+
+                        // ако вече съществува, не я презаписваме, а я допълваме
+                        if (playlists.putIfAbsent(currentPlaylistName, new Playlist()) == null) {
+                            statistics.playlistCleared(currentPlaylistName);
+                            record("PL_CREATE", currentPlaylistName);
+                        }
+                        currentList = playlists.get(currentPlaylistName);
+                    } else if (currentPlaylistName != null && currentList != null) {
+                        AudioItem item;
+                        if (line.startsWith("@")) {
+                            item = resolveId(line.substring(1));
+                            if (item == null) {
+                                missing++;
+                                continue;
+                            }
+                        } else {
+                            item = parseCSVLine(line);
+                            if (item == null) {
+                                continue;
+                            }
+                            item = resolveOrImport(item);
+                        }
+                        addToList(currentPlaylistName, currentList, item);
+                        metrics.items("loadAllPlaylists", 1);
+                        recordItems("PL_ITEM", currentPlaylistName, Collections.singletonList(item));
                     }
                 }
+
+                metrics.bytesRead("loadAllPlaylists", new File(filename).length());
+                if (!playlists.isEmpty()) {
+                    System.out.println("📂 Заредени плейлисти от файл: " + filename);
+                }
+                if (missing > 0) {
+                    System.out.println("⚠️ " + missing + " записа от плейлистите липсват в каталога и са пропуснати.");
+                }
+            } catch (FileNotFoundException e) {
+                System.out.println("ℹ️ Файлът " + filename + " не е намерен (няма записани плейлисти).");
+            } catch (IOException e) {
+                System.out.println("❌ Грешка при четене на плейлисти: " + e.getMessage());
             }
+        } finally {
+            metrics.record("loadAllPlaylists", opStart);
+        }
+    }
 
-            if (!playlists.isEmpty()) {
-                System.out.println("📂 Заредени плейлисти от файл: " + filename);
+    /**
+     * Записва каталога и плейлистите в двоичен snapshot (виж CatalogSnapshot).
+     */
+    public void saveSnapshot(String filename) {
+        long opStart = metrics.start("saveSnapshot");
+        try {
+            try {
+                CatalogSnapshot.write(Paths.get(filename), catalog, playlists,
+                    journal != null ? journal.lastSeq() : snapshotSeq);
+                metrics.items("saveSnapshot", catalog.size());
+                metrics.bytesWritten("saveSnapshot", Files.size(Paths.get(filename)));
+                System.out.println("💾 Snapshot на каталога е записан: " + filename);
+            } catch (IOException e) {
+                System.out.println("❌ Грешка при запис на snapshot: " + e.getMessage());
             }
-        } catch (FileNotFoundException e) {
-            System.out.println("ℹ️ Файлът " + filename + " не е намерен (няма записани плейлисти).");
-        } catch (IOException e) {
-            System.out.println("❌ Грешка при четене на плейлисти: " + e.getMessage());
+        } finally {
+            metrics.record("saveSnapshot", opStart);
         }
     }
 
-    private List<AudioItem> loadListFromFile(String filename) {
-        List<AudioItem> result = new ArrayList<>();
-        
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                AudioItem item = parseCSVLine(line);
-                if (item != null) {
-                    result.add(item);
-                }
+    /**
+     * Зарежда каталога и плейлистите от двоичен snapshot.
+     * Връща false, ако файлът липсва или не може да бъде прочетен.
+     */
+    public boolean loadSnapshot(String filename) {
+        long opStart = metrics.start("loadSnapshot");
+        try {
+            long start = System.nanoTime();
+            CatalogSnapshot snapshot;
+            try {
+                snapshot = CatalogSnapshot.read(Paths.get(filename));
+            } catch (NoSuchFileException e) {
+                return false;
+            } catch (IOException e) {
+                System.out.println("⚠️ Snapshot-ът не може да бъде прочетен: " + e.getMessage());
+                return false;
             }
-        } catch (FileNotFoundException e) {
-            System.out.println("ℹ️ Файлът " + filename + " не е намерен.");
-        } catch (IOException e) {
-            System.out.println("❌ Грешка при четене: " + e.getMessage());
+
+            metrics.items("loadSnapshot", snapshot.catalog.size());
+            metrics.bytesRead("loadSnapshot", new File(filename).length());
+            snapshotSeq = snapshot.journalSeq;
+            catalog.addAll(snapshot.catalog);
+            snapshot.catalog.forEach(this::indexItem);
+            snapshot.playlists.forEach((name, items) -> {
+                Playlist playlist = playlists.computeIfAbsent(name, k -> new Playlist());
+                items.forEach(item -> addToList(name, playlist, item));
+            });
+
+            System.out.println("📂 Каталогът е зареден от snapshot: " + snapshot.catalog.size()
+                + " обекта, " + snapshot.playlists.size() + " плейлиста ("
+                + (System.nanoTime() - start) / 1_000_000 + " ms)");
+            return true;
+        } finally {
+            metrics.record("loadSnapshot", opStart);
         }
+    }
+
+    /**
+     * Зарежда CSV файл паралелно (виж CsvFileLoader). Редовете, които
+     * бързият парсер не разпознава, минават през parseCSVLine.
+     * Достъпен в пакета заради bench/CatalogBenchmark.
+     */
+    CsvFileLoader.Result loadListFromFile(String filename) {
+        long opStart = metrics.start("loadListFromFile");
+        try {
+            try {
+                Path path = Paths.get(filename);
+                CsvFileLoader.Result result = CompressedCatalogFile.isCompressed(path)
+                        ? loadCompressed(path)
+                        : CsvFileLoader.load(path, this::parseCSVLine);
+                metrics.items("loadListFromFile", result.items.size());
+                metrics.bytesRead("loadListFromFile", result.bytes);
+                return result;
+            } catch (NoSuchFileException e) {
+                System.out.println("ℹ️ Файлът " + filename + " не е намерен.");
+            } catch (IOException e) {
+                System.out.println("❌ Грешка при четене: " + e.getMessage());
+            }
         
-        return result;
+            return CsvFileLoader.Result.empty();
+        } finally {
+            metrics.record("loadListFromFile", opStart);
+        }
+    }
+
+    private CsvFileLoader.Result loadCompressed(Path path) throws IOException {
+        try (CompressedCatalogFile file = CompressedCatalogFile.open(path)) {
+            return file.loadAll(this::parseCSVLine);
+        }
+    }
+
+    // Достъпен в пакета заради bench/CatalogBenchmark
+    AudioItem parseCSVLine(String line) {
+        return parseCSVParts(CsvCodec.split(line));
     }
 
-    private AudioItem parseCSVLine(String line) {
+    private AudioItem parseCSVParts(String[] parts) {
         try {
-            String[] parts = line.split(",");
             if (parts.length < 2) return null;
 
             String type = parts[0].toUpperCase();
@@ -465,49 +1206,368 @@ public class CatalogManager {
         }
     }
 
-    // ==================== СТАТИСТИКА ====================
+    // ==================== ЖУРНАЛ ====================
 
-    public void showStatistics() {
-        System.out.println("\n╔════════════════════════════════════════════════╗");
-        System.out.println("║         📊 СТАТИСТИКА                          ║");
-        System.out.println("╚════════════════════════════════════════════════╝");
+    /**
+     * Отваря журнала на промените. От този момент всяка промяна се дописва
+     * веднага във файла, вместо каталогът да се презаписва при изход.
+     *
+     * Ако базата е зареждана от snapshot, първо се прилагат записите от
+     * журнала след неговия номер. Ако е зареждана от CSV, се прилагат
+     * записите след последната отметка SAVED (текстовите файлове вече
+     * съдържат по-старите), или всички, ако отметка няма. И в двата случая
+     * журналът не се изхвърля, без да е приложен. След CSV база веднага се
+     * записва нов snapshot.
+     */
+    public void openJournal(String journalFile, String snapshotFile, boolean baseIsSnapshot) {
+        long opStart = metrics.start("openJournal");
+        try {
+            journalPath = Paths.get(journalFile);
+            snapshotPath = Paths.get(snapshotFile);
+            long lastSeq = snapshotSeq;
+            try {
+                long afterSeq = baseIsSnapshot ? snapshotSeq : CatalogJournal.lastSeqOf(journalPath, "SAVED");
+                quiet = true;
+                int[] applied = {0};
+                int[] skipped = {0};
+                try {
+                    lastSeq = Math.max(lastSeq, CatalogJournal.replay(journalPath, afterSeq, parts -> {
+                        if (applyJournalRecord(parts)) {
+                            applied[0]++;
+                        } else {
+                            skipped[0]++;
+                        }
+                    }));
+                } finally {
+                    quiet = false;
+                }
+                if (applied[0] > 0) {
+                    System.out.println("📜 Приложени промени от журнала: " + applied[0]);
+                }
+                if (skipped[0] > 0) {
+                    System.out.println("⚠️ Пропуснати повредени записи в журнала: " + skipped[0]);
+                }
+                journal = new CatalogJournal(journalPath, lastSeq);
+            } catch (IOException e) {
+                System.out.println("❌ Журналът не може да бъде отворен: " + e.getMessage());
+                return;
+            }
+
+            if (!baseIsSnapshot || journal.recordsInFile() >= COMPACT_THRESHOLD
+                    || !Files.exists(snapshotPath)) {
+                compactJournal();
+            }
+        } finally {
+            metrics.record("openJournal", opStart);
+        }
+    }
+
+    /**
+     * Записва нов snapshot във фонов режим и изтрива покритите от него
+     * части на журнала. Главната нишка само копира списъците (O(n) по
+     * референции) и започва нов файл на журнала.
+     */
+    public void compactJournal() {
+        long opStart = metrics.start("compactJournal");
+        try {
+            if (journal == null || (compaction != null && !compaction.isDone())) {
+                return;
+            }
+
+            List<AudioItem> catalogCopy = new ArrayList<>(catalog);
+            Map<String, List<AudioItem>> playlistsCopy = new LinkedHashMap<>();
+            playlists.forEach((name, items) -> playlistsCopy.put(name, new ArrayList<>(items)));
+            long seq = journal.lastSeq();
+            try {
+                journal.rotate();
+            } catch (IOException e) {
+                System.out.println("⚠️ Неуспешно компактиране на журнала: " + e.getMessage());
+                return;
+            }
+
+            Path snapshot = snapshotPath;
+            Path journalFile = journalPath;
+            compaction = compactor.submit(() -> {
+                try {
+                    CatalogSnapshot.write(snapshot, catalogCopy, playlistsCopy, seq);
+                    CatalogJournal.deleteSegmentsUpTo(journalFile, seq);
+                } catch (IOException e) {
+                    // Сегментите остават и ще бъдат приложени при следващото стартиране
+                    System.out.println("⚠️ Неуспешно компактиране на журнала: " + e.getMessage());
+                }
+            });
+        } finally {
+            metrics.record("compactJournal", opStart);
+        }
+    }
 
-        if (catalog.isEmpty()) {
-            System.out.println("  Каталогът е празен.");
+    /** Изчаква текущото компактиране и затваря журнала (при изход). */
+    public void closeJournal() {
+        long opStart = metrics.start("closeJournal");
+        try {
+            if (journal == null) {
+                return;
+            }
+            try {
+                if (compaction != null) {
+                    compaction.get();
+                }
+                journal.close();
+                System.out.println("💾 Промените са записани в журнала: " + journalPath);
+            } catch (IOException | ExecutionException e) {
+                System.out.println("❌ Грешка при затваряне на журнала: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            journal = null;
+        } finally {
+            metrics.record("closeJournal", opStart);
+        }
+    }
+
+    private void record(String op, String... args) {
+        if (journal == null) {
             return;
         }
+        try {
+            journal.append(op, args);
+            journal.flush();
+        } catch (IOException e) {
+            System.out.println("⚠️ Промяната не е записана в журнала: " + e.getMessage());
+        }
+        compactIfNeeded();
+    }
 
-        System.out.println("  Общо обекти: " + catalog.size());
-        System.out.println("  Плейлисти: " + playlists.size());
-        
-        // Статистика по категории
-        Map<AudioCategory, Long> categoryCounts = catalog.stream()
-            .collect(Collectors.groupingBy(AudioItem::getCategory, Collectors.counting()));
-        
-        System.out.println("\n  По категории:");
-        for (AudioCategory cat : AudioCategory.values()) {
-            long count = categoryCounts.getOrDefault(cat, 0L);
-            System.out.println("    • " + cat.getBgName() + ": " + count);
+    private void recordItems(String op, String arg, List<AudioItem> items) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            for (AudioItem item : items) {
+                journal.appendItem(op, arg, item);
+            }
+            journal.flush();
+        } catch (IOException e) {
+            System.out.println("⚠️ Промяната не е записана в журнала: " + e.getMessage());
         }
+        compactIfNeeded();
+    }
 
-        // Най-често срещан жанр
-        Map<String, Long> genreCounts = catalog.stream()
-            .collect(Collectors.groupingBy(AudioItem::getGenre, Collectors.counting()));
-        
-        String topGenre = genreCounts.entrySet().stream()
-            .max(Map.Entry.comparingByValue())
-            .map(Map.Entry::getKey)
-            .orElse("N/A");
-        
-        System.out.println("\n  Най-популярен жанр: " + topGenre);
-        
-        // Обща продължителност
-        double totalDuration = catalog.stream()
-            .mapToDouble(AudioItem::getDuration)
-            .sum();
-        
-        System.out.println("  Обща продължителност: " + String.format("%.2f мин (%.2f часа)", 
-            totalDuration, totalDuration / 60));
+    private void compactIfNeeded() {
+        if (journal.recordsInFile() >= COMPACT_THRESHOLD) {
+            compactJournal();
+        }
+    }
+
+    /**
+     * Прилага един запис от журнала. Запис с грешен брой полета или
+     * невалидно число не се прилага - връща false и стартирането продължава.
+     */
+    private boolean applyJournalRecord(String[] parts) {
+        String op = parts[1];
+        int fields = journalFields(op);
+        if (fields < 0) {
+            System.out.println("⚠️ Непознат запис в журнала: " + op);
+            return false;
+        }
+        boolean variable = op.equals("ADD") || op.equals("PL_ITEM") || op.equals("PL_REORDER");
+        if (variable ? parts.length < fields : parts.length != fields) {
+            return false;
+        }
+        try {
+            applyJournalOp(op, parts);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Броят полета (с номера и операцията) на всеки вид запис; за ADD и
+     * PL_ITEM - най-малкият, защото след тях следва CSV на обекта, а за
+     * PL_REORDER - без идентификаторите. -1 за непозната операция.
+     */
+    private static int journalFields(String op) {
+        switch (op) {
+            case "SAVED":
+                return 2;
+            case "ADD":
+            case "DELETE":
+            case "SORT":
+            case "PL_CREATE":
+            case "PL_DELETE":
+            case "PL_REORDER":
+                return 3;
+            case "PL_SORT":
+            case "PL_ADD":
+            case "PL_REMOVE":
+            case "PL_ITEM":
+                return 4;
+            case "PL_MOVE":
+                return 5;
+            default:
+                return -1;
+        }
+    }
+
+    private void applyJournalOp(String op, String[] parts) {
+        switch (op) {
+            case "SAVED":
+                break; // само отметка - виж saveTextFiles
+            case "ADD": {
+                AudioItem item = parseCSVParts(Arrays.copyOfRange(parts, 2, parts.length));
+                if (item == null) {
+                    throw new IllegalArgumentException("Невалиден обект");
+                }
+                addItem(item);
+                break;
+            }
+            case "DELETE":
+                deleteItem(parts[2]);
+                break;
+            case "SORT":
+            case "PL_SORT":
+                break; // от стари журнали - редът за показване вече не се пази
+            case "PL_CREATE":
+                createPlaylist(parts[2]);
+                break;
+            case "PL_DELETE":
+                deletePlaylist(parts[2]);
+                break;
+            case "PL_ADD":
+                addToPlaylist(parts[2], parts[3]);
+                break;
+            case "PL_REMOVE":
+                removeFromPlaylist(parts[2], parts[3]);
+                break;
+            case "PL_REORDER":
+                reorderPlaylist(parts[2], Arrays.copyOfRange(parts, 3, parts.length));
+                break;
+            case "PL_MOVE":
+                movePlaylistItem(parts[2], Integer.parseInt(parts[3]), Integer.parseInt(parts[4]));
+                break;
+            case "PL_ITEM": {
+                AudioItem item = parseCSVParts(Arrays.copyOfRange(parts, 3, parts.length));
+                if (item == null) {
+                    throw new IllegalArgumentException("Невалиден обект");
+                }
+                addToList(parts[2], playlists.computeIfAbsent(parts[2], k -> new Playlist()),
+                    resolveOrImport(item));
+                break;
+            }
+        }
+    }
+
+    private void info(String message) {
+        if (!quiet) {
+            System.out.println(message);
+        }
+    }
+
+    // ==================== ИНДЕКСИ ====================
+
+    private void indexItem(AudioItem item) {
+        item.seq = nextSeq++;
+        idIndex.putIfAbsent(item.getId(), item);
+        titleIndex.add(item);
+        searchIndex.add(item);
+        autocomplete.add(item);
+        attributeIndex.add(item);
+        sortedViews.add(item);
+        statistics.itemAdded(item);
+    }
+
+    private void unindexItem(AudioItem item) {
+        titleIndex.remove(item);
+        if (idIndex.remove(item.getId(), item)) {
+            // Ако в каталога има друг обект със същото съдържание, той поема идентификатора
+            for (AudioItem other : titleIndex.all(item.getTitle())) {
+                if (other.getId() == item.getId()) {
+                    idIndex.put(other.getId(), other);
+                    break;
+                }
+            }
+        }
+        searchIndex.remove(item);
+        autocomplete.remove(item);
+        attributeIndex.remove(item);
+        sortedViews.remove(item);
+        statistics.itemRemoved(item);
+    }
+
+    private AudioItem resolveId(String hexId) {
+        try {
+            return idIndex.get(Long.parseUnsignedLong(hexId, 16));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Обектът от каталога със същото съдържание като item, или null.
+     * Идентификаторът (хеш на CSV записа) намира кандидата за O(1), а
+     * сравнението на записите изключва случайно съвпадение на хеша.
+     */
+    private AudioItem findSameContent(AudioItem item) {
+        AudioItem existing = idIndex.get(item.getId());
+        return existing != null && existing.toCSV().equals(item.toCSV()) ? existing : null;
+    }
+
+    /**
+     * Обектът от каталога със същото съдържание като item. Ако няма такъв,
+     * item се добавя в каталога - плейлистите съдържат само обекти от него.
+     */
+    private AudioItem resolveOrImport(AudioItem item) {
+        AudioItem existing = findSameContent(item);
+        if (existing != null) {
+            return existing;
+        }
+        catalog.add(item);
+        indexItem(item);
+        recordItems("ADD", null, Collections.singletonList(item));
+        return item;
+    }
+
+    // ==================== СТАТИСТИКА ====================
+
+    public void showStatistics() {
+        long opStart = metrics.start("showStatistics");
+        try {
+            System.out.println("\n╔════════════════════════════════════════════════╗");
+            System.out.println("║         📊 СТАТИСТИКА                          ║");
+            System.out.println("╚════════════════════════════════════════════════╝");
+
+            if (catalog.isEmpty()) {
+                System.out.println("  Каталогът е празен.");
+                return;
+            }
+
+            System.out.println("  Общо обекти: " + catalog.size());
+            System.out.println("  Плейлисти: " + playlists.size());
+
+            // Всички стойности са поддържани текущо (виж CatalogStatistics)
+            System.out.println("\n  По категории:");
+            for (AudioCategory cat : AudioCategory.values()) {
+                System.out.println("    • " + cat.getBgName() + ": " + statistics.count(cat));
+            }
+
+            String topGenre = statistics.topGenre();
+            System.out.println("\n  Най-популярен жанр: " + (topGenre != null ? topGenre : "N/A"));
+
+            double totalDuration = statistics.totalDuration();
+            System.out.println("  Обща продължителност: " + String.format("%.2f мин (%.2f часа)", 
+                totalDuration, totalDuration / 60));
+        } finally {
+            metrics.record("showStatistics", opStart);
+        }
+    }
+
+    /** Брой извиквания, времена (p50/p99/макс) и обем на операциите. */
+    public void showMetrics() {
+        System.out.println("\n╔════════════════════════════════════════════════╗");
+        System.out.println("║         ⏱️  МЕТРИКИ НА ОПЕРАЦИИТЕ               ║");
+        System.out.println("╚════════════════════════════════════════════════╝");
+        System.out.print(metrics.report());
     }
 
     // ==================== GETTERS ====================
@@ -516,8 +1576,26 @@ public class CatalogManager {
         return new ArrayList<>(catalog); // Връщаме копие за безопасност
     }
     
-    public List<AudioItem> getPlaylist(String name) { 
-        return playlists.get(name);
+    /**
+     * Плейлистът само за четене (или null). Промените минават през
+     * методите на мениджъра - иначе индексите и журналът не ги виждат.
+     */
+    public List<AudioItem> getPlaylist(String name) {
+        Playlist playlist = playlists.get(name);
+        return playlist != null ? Collections.unmodifiableList(playlist) : null;
+    }
+
+    public Set<String> getPlaylistNames() {
+        return new LinkedHashSet<>(playlists.keySet());
+    }
+
+    /** Текущата статистика - евтина за четене и от друга нишка. */
+    public CatalogStatistics getStatistics() {
+        return statistics;
+    }
+
+    public CatalogMetrics getMetrics() {
+        return metrics;
     }
 
     public int getCatalogSize() {
@@ -0,0 +1,309 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Метрики на операциите на CatalogManager: брой извиквания, хистограма на
+ * времето, обработени обекти и прочетени/записани байтове.
+ *
+ * Хистограмата е като HdrHistogram: кофите растат на степени на двойката,
+ * а всяка степен е разделена на 32 равни части - грешката е под 3% за
+ * всяка стойност от 1 ns до ~18 минути, а броят кофи е фиксиран (1152).
+ * Записът е само увеличаване на броячи в AtomicLongArray и LongAdder-и -
+ * без заделяне на памет, така че не натоварва GC; отчетите се четат
+ * безопасно от JMX и от фонова нишка.
+ *
+ * Броят извиквания е точен, но времето се мери избирателно: System.nanoTime
+ * струва 20-40 ns, колкото голяма част от addToPlaylist. Затова операция,
+ * чието последно измерване е под FAST_NANOS, се мери при всяко 256-о
+ * извикване, а по-бавните - винаги. Така цената на незамерено извикване е
+ * едно търсене в таблицата и увеличаване на брояч.
+ *
+ * Операциите се регистрират при първото извикване по име на метод.
+ * Извикванията идват от нишката на CatalogManager (той не е нишково
+ * безопасен) - броячът на извикванията затова е обикновено поле.
+ */
+public class CatalogMetrics implements CatalogMetricsMBean {
+    public static final String MBEAN_NAME = "AudioCatalogue:type=CatalogMetrics";
+
+    // ==================== ХИСТОГРАМА ====================
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKETS = (40 - SUB_BITS + 1) * SUB_COUNT;
+
+    /** Върнато от start, когато извикването не се мери. */
+    public static final long NOT_TIMED = Long.MIN_VALUE;
+    private static final long FAST_NANOS = 20_000;
+    private static final int FAST_SAMPLE_MASK = 255;
+
+    /** Кофата на стойност (в ns): точна до 32, после 32 кофи на степен на 2. */
+    static int bucket(long value) {
+        if (value < SUB_COUNT) {
+            return (int) Math.max(value, 0);
+        }
+        value = Math.min(value, MAX_VALUE);
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) (value >>> shift) - SUB_COUNT;
+    }
+
+    /** Средата на кофата - стойността, която се показва за нея. */
+    static long bucketValue(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long lower = (long) (SUB_COUNT + bucket % SUB_COUNT) << shift;
+        return lower + ((1L << shift) >>> 1);
+    }
+
+    /** Метриките на една операция. */
+    public static final class Operation {
+        final String name;
+        private long calls;
+        // 0 = мери всяко извикване, FAST_SAMPLE_MASK = всяко 256-о
+        private int sampleMask;
+        private final LongAdder timed = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder items = new LongAdder();
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder bytesWritten = new LongAdder();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos) {
+            sampleMask = nanos < FAST_NANOS ? FAST_SAMPLE_MASK : 0;
+            timed.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            histogram.incrementAndGet(bucket(nanos));
+        }
+
+        /** Брой извиквания (всички, не само измерените). */
+        public long count() {
+            return calls;
+        }
+
+        /** Брой измерени извиквания - от тях са времената. */
+        public long timed() {
+            return timed.sum();
+        }
+
+        public long items() {
+            return items.sum();
+        }
+
+        public long bytesRead() {
+            return bytesRead.sum();
+        }
+
+        public long bytesWritten() {
+            return bytesWritten.sum();
+        }
+
+        public long maxNanos() {
+            return maxNanos.get();
+        }
+
+        public double meanNanos() {
+            long n = timed.sum();
+            return n == 0 ? 0 : (double) totalNanos.sum() / n;
+        }
+
+        /** Стойността, под която са p (0..1) от измерванията, в ns. */
+        public long percentileNanos(double p) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(p * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketValue(i), maxNanos());
+                }
+            }
+            return maxNanos();
+        }
+
+        void reset() {
+            calls = 0;
+            timed.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+            items.reset();
+            bytesRead.reset();
+            bytesWritten.reset();
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram.set(i, 0);
+            }
+        }
+    }
+
+    // ==================== ЗАПИС ====================
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private ScheduledExecutorService dumper;
+
+    /** Операцията с това име; създава се при първото извикване. */
+    public Operation operation(String name) {
+        Operation op = operations.get(name);
+        return op != null ? op : operations.computeIfAbsent(name, Operation::new);
+    }
+
+    /**
+     * Отбелязва началото на извикване. Връща System.nanoTime, ако то ще
+     * се мери, иначе NOT_TIMED; резултатът се подава на record.
+     */
+    public long start(String name) {
+        Operation op = operation(name);
+        return (op.calls++ & op.sampleMask) == 0 ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /** Завършва извикване, започнато със start. */
+    public void record(String name, long startNanos) {
+        if (startNanos != NOT_TIMED) {
+            operation(name).record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /** Обработени обекти (прегледани, върнати, заредени или записани). */
+    public void items(String name, long count) {
+        operation(name).items.add(count);
+    }
+
+    public void bytesRead(String name, long bytes) {
+        operation(name).bytesRead.add(bytes);
+    }
+
+    public void bytesWritten(String name, long bytes) {
+        operation(name).bytesWritten.add(bytes);
+    }
+
+    // ==================== ОТЧЕТ ====================
+
+    /** Текстов отчет: по един ред на операция, подредени по име. */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-24s %9s %9s %10s %10s %10s %10s %10s %10s %10s%n",
+            "операция", "брой", "измерени", "p50 ms", "p99 ms", "макс ms", "ср. ms", "обекти", "прочетени",
+            "записани"));
+        for (String name : new TreeSet<>(operations.keySet())) {
+            Operation op = operations.get(name);
+            if (op.count() == 0) {
+                continue;
+            }
+            sb.append(String.format(Locale.ROOT, "%-24s %9d %9d %10.3f %10.3f %10.3f %10.3f %10d %10s %10s%n",
+                name, op.count(), op.timed(), op.percentileNanos(0.5) / 1e6, op.percentileNanos(0.99) / 1e6,
+                op.maxNanos() / 1e6, op.meanNanos() / 1e6, op.items(),
+                formatBytes(op.bytesRead()), formatBytes(op.bytesWritten())));
+        }
+        return sb.toString();
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes == 0) {
+            return "-";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+        }
+        return String.format(Locale.ROOT, "%.1f MB", bytes / 1048576.0);
+    }
+
+    /**
+     * На всеки periodSeconds записва отчета във файла (през временен файл,
+     * за да не се чете наполовина записан). Нишката е фонова.
+     */
+    public synchronized void startDump(Path file, long periodSeconds) {
+        if (dumper != null) {
+            dumper.shutdownNow();
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> dump(file), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public void dump(Path file) {
+        try {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, (new Date() + "\n" + report()).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("⚠️ Метриките не могат да бъдат записани: " + e.getMessage());
+        }
+    }
+
+    /** Регистрира метриките като MBean (виж CatalogMetricsMBean). */
+    public void registerMBean() throws JMException {
+        ObjectName name = new ObjectName(MBEAN_NAME);
+        if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        }
+    }
+
+    // ==================== JMX ====================
+
+    @Override
+    public String getReport() {
+        return report();
+    }
+
+    @Override
+    public String[] getOperationNames() {
+        return new TreeSet<>(operations.keySet()).toArray(new String[0]);
+    }
+
+    @Override
+    public long getTotalCalls() {
+        long total = 0;
+        for (Operation op : operations.values()) {
+            total += op.count();
+        }
+        return total;
+    }
+
+    @Override
+    public long count(String operation) {
+        Operation op = operations.get(operation);
+        return op != null ? op.count() : 0;
+    }
+
+    @Override
+    public double percentileMillis(String operation, double percentile) {
+        Operation op = operations.get(operation);
+        return op != null ? op.percentileNanos(percentile / 100) / 1e6 : 0;
+    }
+
+    @Override
+    public void reset() {
+        operations.values().forEach(Operation::reset);
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * JMX изглед на CatalogMetrics (напр. в JConsole под AudioCatalogue).
+ * Времената са в милисекунди, percentile е от 0 до 100.
+ */
+public interface CatalogMetricsMBean {
+    String getReport();
+
+    String[] getOperationNames();
+
+    long getTotalCalls();
+
+    long count(String operation);
+
+    double percentileMillis(String operation, double percentile);
+
+    void reset();
+}
@@ -0,0 +1,328 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP сървър за заявки към каталога (режим {@code --server} на Main).
+ *
+ * Крайни точки (всички са GET и връщат JSON):
+ * <pre>
+ *   /search?q=текст
+ *   /filter?category=SONG | genre=.. | author=.. | year=.. | from=..&amp;to=..
+ *   /sort?by=title|author|year|duration
+ *   /playlists
+ *   /playlists/{име}
+ *   /stats
+ * </pre>
+ * Списъците от обекти приемат {@code limit} (по подразбиране 100) и
+ * {@code cursor} - полето {@code next} от предишния отговор, което липсва
+ * на последната страница. Друг път (напр. /searchxyz) връща 404.
+ *
+ * Сървърът слуша само на loopback адреса (localhost) - не е предназначен
+ * за достъп от мрежата.
+ *
+ * Заявките се обслужват от ConcurrentCatalogManager, чиито четения не
+ * чакат, така че всяка заявка получава своя нишка: виртуална нишка, ако JDK
+ * ги поддържа (21+), иначе нишка от кеширан пул. Сървърът е само за четене -
+ * промените минават през конзолното меню и журнала.
+ */
+public class CatalogServer {
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int BACKLOG = 4096;
+
+    private final ConcurrentCatalogManager catalog;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public CatalogServer(ConcurrentCatalogManager catalog, int port) throws IOException {
+        this.catalog = catalog;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        this.executor = requestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/search", json("/search", false, this::search));
+        server.createContext("/filter", json("/filter", false, this::filter));
+        server.createContext("/sort", json("/sort", false, this::sort));
+        server.createContext("/playlists", json("/playlists", true, this::playlists));
+        server.createContext("/stats", json("/stats", false, this::stats));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /** Нишка на заявка: виртуални нишки (JDK 21+) или кеширан пул. */
+    static ExecutorService requestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // По-стар JDK или preview без --enable-preview
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "catalog-http");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // ==================== КРАЙНИ ТОЧКИ ====================
+
+    /** Отговор: HTTP код и JSON тяло. */
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private interface Endpoint {
+        Response handle(String path, Map<String, String> query);
+    }
+
+    private Response search(String path, Map<String, String> query) {
+        String q = query.get("q");
+        if (q == null) {
+            return error(400, "Липсва параметър q");
+        }
+        return items(catalog.search(q, query.get("cursor"), limit(query)));
+    }
+
+    private Response filter(String path, Map<String, String> query) {
+        String cursor = query.get("cursor");
+        int limit = limit(query);
+        try {
+            if (query.containsKey("category")) {
+                return items(catalog.findByCategory(
+                        AudioCategory.valueOf(query.get("category").toUpperCase(Locale.ROOT)), cursor, limit));
+            }
+            if (query.containsKey("genre")) {
+                return items(catalog.findByGenre(query.get("genre"), cursor, limit));
+            }
+            if (query.containsKey("author")) {
+                return items(catalog.findByAuthor(query.get("author"), cursor, limit));
+            }
+            if (query.containsKey("year")) {
+                return items(catalog.findByYear(Integer.parseInt(query.get("year")), cursor, limit));
+            }
+            if (query.containsKey("from") && query.containsKey("to")) {
+                return items(catalog.findByYearRange(Integer.parseInt(query.get("from")),
+                        Integer.parseInt(query.get("to")), cursor, limit));
+            }
+        } catch (IllegalArgumentException e) {
+            return error(400, "Невалидна стойност: " + e.getMessage());
+        }
+        return error(400, "Очаква се category, genre, author, year или from и to");
+    }
+
+    private Response sort(String path, Map<String, String> query) {
+        SortedViews.Order order = SortedViews.Order.parse(query.getOrDefault("by", ""));
+        if (order == null) {
+            return error(400, "Невалиден критерий за сортиране");
+        }
+        return items(QueryPage.sorted(catalog.sorted(order), order, query.get("cursor"), limit(query)));
+    }
+
+    private Response playlists(String path, Map<String, String> query) {
+        String name = path.length() > "/playlists/".length()
+                ? path.substring("/playlists/".length())
+                : null;
+        if (name == null) {
+            StringBuilder json = new StringBuilder("[");
+            for (String playlist : catalog.getPlaylistNames()) {
+                List<AudioItem> items = catalog.getPlaylist(playlist);
+                if (items == null) {
+                    continue; // изтрит междувременно
+                }
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                json.append("{\"name\":");
+                appendString(json, playlist);
+                json.append(",\"size\":").append(items.size())
+                    .append(",\"duration\":").append(catalog.getPlaylistDuration(playlist))
+                    .append('}');
+            }
+            return new Response(200, json.append(']').toString());
+        }
+        List<AudioItem> items = catalog.getPlaylist(name);
+        if (items == null) {
+            return error(404, "Няма такъв плейлист");
+        }
+        return items(QueryPage.byPosition(items, query.get("cursor"), limit(query)));
+    }
+
+    private Response stats(String path, Map<String, String> query) {
+        ConcurrentCatalogManager.CatalogStats stats = catalog.getStatistics();
+        StringBuilder json = new StringBuilder("{\"items\":").append(stats.itemCount)
+            .append(",\"playlists\":").append(catalog.getPlaylistNames().size())
+            .append(",\"totalDuration\":").append(stats.totalDuration)
+            .append(",\"topGenre\":");
+        if (stats.topGenre != null) {
+            appendString(json, stats.topGenre);
+        } else {
+            json.append("null");
+        }
+        json.append(",\"categories\":{");
+        for (AudioCategory category : AudioCategory.values()) {
+            if (category.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(category.name()).append("\":").append(stats.count(category));
+        }
+        return new Response(200, json.append("}}").toString());
+    }
+
+    // ==================== JSON ====================
+
+    private static int limit(Map<String, String> query) {
+        String value = query.getOrDefault("limit", String.valueOf(DEFAULT_LIMIT));
+        int limit;
+        try {
+            limit = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            limit = 0;
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("Невалиден limit: " + value);
+        }
+        return limit;
+    }
+
+    private Response items(QueryPage page) {
+        StringBuilder json = new StringBuilder(96 + page.items.size() * 128);
+        json.append("{\"total\":").append(page.total).append(",\"items\":[");
+        for (int i = 0; i < page.items.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendItem(json, page.items.get(i));
+        }
+        json.append(']');
+        if (page.hasNext()) {
+            json.append(",\"next\":");
+            appendString(json, page.nextToken);
+        }
+        return new Response(200, json.append('}').toString());
+    }
+
+    static void appendItem(StringBuilder json, AudioItem item) {
+        json.append("{\"id\":\"").append(Long.toHexString(item.getId()))
+            .append("\",\"category\":\"").append(item.getCategory().name())
+            .append("\",\"title\":");
+        appendString(json, item.getTitle());
+        json.append(",\"author\":");
+        appendString(json, item.getAuthor());
+        json.append(",\"genre\":");
+        appendString(json, item.getGenre());
+        json.append(",\"year\":").append(item.getYear())
+            .append(",\"duration\":").append(item.getDuration())
+            .append('}');
+    }
+
+    static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    private static Response error(int status, String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendString(json, message);
+        return new Response(status, json.append('}').toString());
+    }
+
+    // ==================== HTTP ====================
+
+    /**
+     * createContext съвпада по префикс на низа, така че пътят се проверява
+     * тук: точно {@code path}, а при {@code subpaths} и {@code path/...}.
+     */
+    private static HttpHandler json(String path, boolean subpaths, Endpoint endpoint) {
+        return exchange -> {
+            try (exchange) {
+                Response response;
+                String requested = exchange.getRequestURI().getPath();
+                if (!requested.equals(path) && !(subpaths && requested.startsWith(path + "/"))) {
+                    response = error(404, "Няма такъв адрес: " + requested);
+                } else if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Allow", "GET");
+                    response = error(405, "Поддържа се само GET");
+                } else {
+                    URI uri = exchange.getRequestURI();
+                    try {
+                        response = endpoint.handle(uri.getPath(), parseQuery(uri.getRawQuery()));
+                    } catch (IllegalArgumentException e) {
+                        // Невалиден limit или cursor
+                        response = error(400, e.getMessage());
+                    } catch (RuntimeException e) {
+                        response = error(500, String.valueOf(e));
+                    }
+                }
+                send(exchange, response);
+            }
+        };
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null || raw.isEmpty()) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            String value = eq >= 0 ? pair.substring(eq + 1) : "";
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+}
@@ -0,0 +1,282 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Двоичен snapshot на каталога и плейлистите за бързо стартиране.
+ *
+ * Всяко поле на AudioItem е отделна колона, а автор, жанр и текстовото поле
+ * на подкласа (албум/водещ/разказвач) са номера в общ речник. Четенето е
+ * едно прочитане на файла и няколко bulk копирания в масиви - без парсиране
+ * на текст.
+ *
+ * Формат (big-endian, версия 2):
+ * <pre>
+ *   int magic, int version, long journalSeq, int rows, int catalogRows
+ *   byte[rows]   категория (ordinal)
+ *   int[rows]    година
+ *   double[rows] продължителност
+ *   int[rows]    цяло поле на подкласа (брой песни/епизод/глави, 0 за песен)
+ *   int dictSize, dictSize x string   речник
+ *   int[rows]    автор (номер в речника)
+ *   int[rows]    жанр (номер в речника)
+ *   int[rows]    текстово поле на подкласа (номер в речника, -1 за албум)
+ *   rows x string                     заглавия
+ *   int playlists, за всеки: string име, int size, int[size] номера на редове
+ * </pre>
+ * string = int дължина + UTF-8 байтове. Първите catalogRows реда са
+ * каталогът, останалите са обекти, които са само в плейлисти.
+ * journalSeq е номерът на последния запис от журнала (CatalogJournal),
+ * включен в snapshot-а. Версия 1 няма това поле и се чете с 0.
+ */
+public class CatalogSnapshot {
+    private static final int MAGIC = 0x41435354; // "ACST"
+    private static final int VERSION = 2;
+    // Най-малкият размер на ред: категория, година, продължителност, 4 int
+    // полета и дължината на заглавието
+    private static final int ROW_BYTES = 1 + 4 + 8 + 4 * 4 + 4;
+
+    public final List<AudioItem> catalog;
+    public final Map<String, List<AudioItem>> playlists;
+    public final long journalSeq;
+
+    private CatalogSnapshot(List<AudioItem> catalog, Map<String, List<AudioItem>> playlists,
+                            long journalSeq) {
+        this.catalog = catalog;
+        this.playlists = playlists;
+        this.journalSeq = journalSeq;
+    }
+
+    // ==================== ЗАПИС ====================
+
+    public static void write(Path path, List<AudioItem> catalog,
+                             Map<String, ? extends List<AudioItem>> playlists, long journalSeq) throws IOException {
+        List<AudioItem> rows = new ArrayList<>(catalog);
+        Map<AudioItem, Integer> rowOf = new IdentityHashMap<>();
+        for (int i = 0; i < catalog.size(); i++) {
+            rowOf.putIfAbsent(catalog.get(i), i);
+        }
+        for (List<AudioItem> items : playlists.values()) {
+            for (AudioItem item : items) {
+                if (!rowOf.containsKey(item)) {
+                    rowOf.put(item, rows.size());
+                    rows.add(item);
+                }
+            }
+        }
+
+        int n = rows.size();
+        StringDictionary dictionary = new StringDictionary();
+        int[] authors = new int[n];
+        int[] genres = new int[n];
+        int[] extraStrings = new int[n];
+        int[] extraInts = new int[n];
+        for (int i = 0; i < n; i++) {
+            AudioItem item = rows.get(i);
+            authors[i] = dictionary.idOf(item.getAuthor());
+            genres[i] = dictionary.idOf(item.getGenre());
+            extraStrings[i] = -1;
+            if (item instanceof Song) {
+                extraStrings[i] = dictionary.idOf(((Song) item).getAlbum());
+            } else if (item instanceof Album) {
+                extraInts[i] = ((Album) item).getTracksCount();
+            } else if (item instanceof Podcast) {
+                extraStrings[i] = dictionary.idOf(((Podcast) item).getHost());
+                extraInts[i] = ((Podcast) item).getEpisodeNumber();
+            } else if (item instanceof Audiobook) {
+                extraStrings[i] = dictionary.idOf(((Audiobook) item).getNarrator());
+                extraInts[i] = ((Audiobook) item).getChapters();
+            }
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalSeq);
+            out.writeInt(n);
+            out.writeInt(catalog.size());
+
+            for (AudioItem item : rows) {
+                out.writeByte(item.getCategory().ordinal());
+            }
+            for (AudioItem item : rows) {
+                out.writeInt(item.getYear());
+            }
+            for (AudioItem item : rows) {
+                out.writeDouble(item.getDuration());
+            }
+            writeInts(out, extraInts);
+
+            out.writeInt(dictionary.size());
+            for (int id = 0; id < dictionary.size(); id++) {
+                writeString(out, dictionary.get(id));
+            }
+            writeInts(out, authors);
+            writeInts(out, genres);
+            writeInts(out, extraStrings);
+
+            for (AudioItem item : rows) {
+                writeString(out, item.getTitle());
+            }
+
+            out.writeInt(playlists.size());
+            for (Map.Entry<String, ? extends List<AudioItem>> entry : playlists.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (AudioItem item : entry.getValue()) {
+                    out.writeInt(rowOf.get(item));
+                }
+            }
+            // На диска преди преименуването - иначе след срив може да остане
+            // празен catalog.bin на мястото на стария
+            out.flush();
+            file.getFD().sync();
+        }
+        moveReplacing(tmp, path);
+    }
+
+    static void moveReplacing(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // ==================== ЧЕТЕНЕ ====================
+
+    public static CatalogSnapshot read(Path path) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("Snapshot-ът е твърде голям: " + size + " байта");
+            }
+            buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining() && channel.read(buf) >= 0) {
+                // четем докрай
+            }
+            buf.flip();
+        }
+
+        try {
+            return decode(buf);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+                | NegativeArraySizeException e) {
+            throw new IOException("Повреден snapshot файл: " + path, e);
+        }
+    }
+
+    private static CatalogSnapshot decode(ByteBuffer buf) throws IOException {
+        if (buf.getInt() != MAGIC) {
+            throw new IOException("Файлът не е snapshot на каталога");
+        }
+        int version = buf.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Неподдържана версия на snapshot: " + version);
+        }
+        long journalSeq = version >= 2 ? buf.getLong() : 0;
+        int n = checkCount(buf, buf.getInt(), ROW_BYTES);
+        int catalogRows = buf.getInt();
+        if (catalogRows < 0 || catalogRows > n) {
+            throw new IOException("Повреден snapshot: " + catalogRows + " реда в каталога от " + n);
+        }
+
+        byte[] categories = new byte[n];
+        buf.get(categories);
+        int[] years = readInts(buf, n);
+        double[] durations = new double[n];
+        buf.asDoubleBuffer().get(durations);
+        buf.position(buf.position() + n * 8);
+        int[] extraInts = readInts(buf, n);
+
+        int dictSize = checkCount(buf, buf.getInt(), Integer.BYTES);
+        String[] dictionary = new String[dictSize];
+        for (int id = 0; id < dictSize; id++) {
+            dictionary[id] = readString(buf);
+        }
+        int[] authors = readInts(buf, n);
+        int[] genres = readInts(buf, n);
+        int[] extraStrings = readInts(buf, n);
+
+        AudioCategory[] categoryValues = AudioCategory.values();
+        List<AudioItem> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String title = readString(buf);
+            String author = dictionary[authors[i]];
+            String genre = dictionary[genres[i]];
+            String extra = extraStrings[i] >= 0 ? dictionary[extraStrings[i]] : null;
+            switch (categoryValues[categories[i]]) {
+                case SONG:
+                    rows.add(new Song(title, author, genre, years[i], durations[i], extra));
+                    break;
+                case ALBUM:
+                    rows.add(new Album(title, author, genre, years[i], durations[i], extraInts[i]));
+                    break;
+                case PODCAST:
+                    rows.add(new Podcast(title, author, genre, years[i], durations[i], extraInts[i], extra));
+                    break;
+                default:
+                    rows.add(new Audiobook(title, author, genre, years[i], durations[i], extra, extraInts[i]));
+                    break;
+            }
+        }
+
+        int playlistCount = checkCount(buf, buf.getInt(), 2 * Integer.BYTES);
+        Map<String, List<AudioItem>> playlists = new LinkedHashMap<>();
+        for (int p = 0; p < playlistCount; p++) {
+            String name = readString(buf);
+            int size = checkCount(buf, buf.getInt(), Integer.BYTES);
+            List<AudioItem> items = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                items.add(rows.get(buf.getInt()));
+            }
+            playlists.put(name, items);
+        }
+
+        return new CatalogSnapshot(new ArrayList<>(rows.subList(0, catalogRows)), playlists, journalSeq);
+    }
+
+    /**
+     * Брой записи, прочетен от файла. Проверява се спрямо оставащите байтове
+     * (поне bytesPerEntry на запис), преди по него да се заделят масиви.
+     */
+    private static int checkCount(ByteBuffer buf, int count, int bytesPerEntry) throws IOException {
+        if (count < 0 || (long) count * bytesPerEntry > buf.remaining()) {
+            throw new IOException("Повреден snapshot: невалиден брой записи (" + count + ")");
+        }
+        return count;
+    }
+
+    private static int[] readInts(ByteBuffer buf, int n) {
+        int[] values = new int[n];
+        buf.asIntBuffer().get(values);
+        buf.position(buf.position() + n * 4);
+        return values;
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int len = buf.getInt();
+        String value = new String(buf.array(), buf.arrayOffset() + buf.position(), len, StandardCharsets.UTF_8);
+        buf.position(buf.position() + len);
+        return value;
+    }
+}
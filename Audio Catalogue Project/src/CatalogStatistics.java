@@ -0,0 +1,109 @@
+import java.util.*;
+
+/**
+ * Статистика на каталога, обновявана при всяко добавяне и изтриване.
+ *
+ * Броят по категории, общата продължителност и продължителността на всеки
+ * плейлист са текущи суми. Честотите на жанровете се пазят в "кофи" по брой
+ * (брой -> жанрове с този брой), така че най-популярният жанр е винаги в
+ * кофата с най-голям брой и се намира за O(1), а всяка промяна мести един
+ * жанр в съседна кофа.
+ *
+ * Методите са synchronized - табло в друга нишка може да чете често, а
+ * заключването без конкуренция почти нищо не струва.
+ */
+public class CatalogStatistics {
+    private final long[] categoryCounts = new long[AudioCategory.values().length];
+    private long itemCount;
+    private double totalDuration;
+
+    private final Map<String, Integer> genreCounts = new HashMap<>();
+    private final Map<Integer, Set<String>> genresByCount = new HashMap<>();
+    private int maxGenreCount;
+
+    private final Map<String, Double> playlistDurations = new HashMap<>();
+
+    // ==================== КАТАЛОГ ====================
+
+    public synchronized void itemAdded(AudioItem item) {
+        categoryCounts[item.getCategory().ordinal()]++;
+        itemCount++;
+        totalDuration += item.getDuration();
+        moveGenre(item.getGenre(), +1);
+    }
+
+    public synchronized void itemRemoved(AudioItem item) {
+        categoryCounts[item.getCategory().ordinal()]--;
+        itemCount--;
+        // При празен каталог нулираме, за да не се трупа грешка от закръгляне
+        totalDuration = itemCount == 0 ? 0 : totalDuration - item.getDuration();
+        moveGenre(item.getGenre(), -1);
+    }
+
+    private void moveGenre(String genre, int delta) {
+        int count = genreCounts.getOrDefault(genre, 0);
+        if (count > 0) {
+            Set<String> bucket = genresByCount.get(count);
+            bucket.remove(genre);
+            if (bucket.isEmpty()) {
+                genresByCount.remove(count);
+                if (count == maxGenreCount && delta < 0) {
+                    maxGenreCount--;
+                }
+            }
+        }
+        count += delta;
+        if (count > 0) {
+            genreCounts.put(genre, count);
+            genresByCount.computeIfAbsent(count, k -> new LinkedHashSet<>()).add(genre);
+            maxGenreCount = Math.max(maxGenreCount, count);
+        } else {
+            genreCounts.remove(genre);
+        }
+    }
+
+    public synchronized long count(AudioCategory category) {
+        return categoryCounts[category.ordinal()];
+    }
+
+    public synchronized long itemCount() {
+        return itemCount;
+    }
+
+    public synchronized double totalDuration() {
+        return totalDuration;
+    }
+
+    /** Най-често срещаният жанр или null при празен каталог. */
+    public synchronized String topGenre() {
+        Set<String> top = genresByCount.get(maxGenreCount);
+        return top == null ? null : top.iterator().next();
+    }
+
+    public synchronized int genreCount(String genre) {
+        return genreCounts.getOrDefault(genre, 0);
+    }
+
+    // ==================== ПЛЕЙЛИСТИ ====================
+
+    public synchronized void playlistItemAdded(String playlist, AudioItem item) {
+        playlistDurations.merge(playlist, item.getDuration(), Double::sum);
+    }
+
+    public synchronized void playlistItemRemoved(String playlist, AudioItem item) {
+        playlistDurations.computeIfPresent(playlist, (name, total) -> total - item.getDuration());
+    }
+
+    /** Плейлистът е създаден наново или изпразнен. */
+    public synchronized void playlistCleared(String playlist) {
+        playlistDurations.put(playlist, 0.0);
+    }
+
+    public synchronized void playlistDeleted(String playlist) {
+        playlistDurations.remove(playlist);
+    }
+
+    public synchronized double playlistDuration(String playlist) {
+        return Math.max(0, playlistDurations.getOrDefault(playlist, 0.0));
+    }
+}
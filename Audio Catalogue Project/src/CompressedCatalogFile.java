@@ -0,0 +1,361 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Компресиран каталог (*.acz) - CSV редовете на каталога, разделени на
+ * блокове от около {@value #BLOCK_SIZE} байта, всеки компресиран отделно с
+ * Deflater (zlib, с контролна сума), и индекс на блоковете в края на файла.
+ *
+ * Авторите, жанровете и албумите се повтарят много, така че файлът е
+ * няколко пъти по-малък от catalog.txt. Понеже блоковете са независими,
+ * при запис се компресират, а при зареждане се разкомпресират и
+ * парсират паралелно. За един ред ({@link #get}) се разкомпресира само
+ * неговият блок; последният разкомпресиран блок се пази.
+ *
+ * Формат (big-endian):
+ * <pre>
+ *   int magic
+ *   блокове: zlib данни на редове "CSV\n" (ред никога не пресича блок)
+ *   индекс:  за всеки блок long отместване, int компресиран размер,
+ *            int размер на редовете, int брой редове
+ *   long отместване на индекса, int брой блокове, int magic
+ * </pre>
+ * Четенето не е нишково безопасно (освен {@link #loadAll}).
+ */
+public class CompressedCatalogFile implements AutoCloseable {
+    private static final int MAGIC = 0x41435A31; // "ACZ1"
+    private static final int BLOCK_SIZE = 1 << 15;
+    private static final int INDEX_ENTRY = 20;
+    private static final int TRAILER = 16;
+    // Deflate не компресира повече от ~1032 пъти - по-голям размер на
+    // редовете в индекса значи повреден файл (и не се заделя такъв масив)
+    private static final int MAX_RATIO = 1032;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long[] offsets;
+    private final int[] compressedSizes;
+    private final int[] rawSizes;
+    // firstRows[b] - номерът на първия ред в блок b; firstRows[blocks] = rows
+    private final int[] firstRows;
+
+    private final Inflater inflater = new Inflater();
+    private int cachedBlock = -1;
+    private byte[] cachedBytes;
+    private int[] cachedLineStarts;
+
+    private CompressedCatalogFile(FileChannel channel, long fileSize, long[] offsets, int[] compressedSizes,
+                                  int[] rawSizes, int[] firstRows) {
+        this.channel = channel;
+        this.fileSize = fileSize;
+        this.offsets = offsets;
+        this.compressedSizes = compressedSizes;
+        this.rawSizes = rawSizes;
+        this.firstRows = firstRows;
+    }
+
+    // ==================== ЗАПИС ====================
+
+    /**
+     * Записва обектите атомарно - през временен файл, който замества
+     * целевия едва след успешен запис. Блоковете се компресират паралелно,
+     * по няколко наведнъж, за да не се държи целият каталог в паметта.
+     * Връща размера на файла.
+     */
+    public static long write(Path path, List<AudioItem> items) throws IOException {
+        int batchSize = Runtime.getRuntime().availableProcessors() * 2;
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(index);
+        long written;
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            long offset = Integer.BYTES;
+            int blocks = 0;
+
+            List<byte[]> batch = new ArrayList<>(batchSize);
+            List<Integer> batchRows = new ArrayList<>(batchSize);
+            StringBuilder text = new StringBuilder(BLOCK_SIZE + 256);
+            int rows = 0;
+            for (int i = 0; i <= items.size(); i++) {
+                boolean last = i == items.size();
+                if (!last) {
+                    items.get(i).appendCSV(text);
+                    text.append('\n');
+                    rows++;
+                }
+                if (text.length() >= BLOCK_SIZE || (last && rows > 0)) {
+                    batch.add(text.toString().getBytes(StandardCharsets.UTF_8));
+                    batchRows.add(rows);
+                    text.setLength(0);
+                    rows = 0;
+                }
+                if (batch.size() == batchSize || (last && !batch.isEmpty())) {
+                    List<byte[]> compressed = batch.parallelStream()
+                            .map(CompressedCatalogFile::deflate)
+                            .collect(Collectors.toList());
+                    for (int b = 0; b < compressed.size(); b++) {
+                        byte[] data = compressed.get(b);
+                        out.write(data);
+                        indexOut.writeLong(offset);
+                        indexOut.writeInt(data.length);
+                        indexOut.writeInt(batch.get(b).length);
+                        indexOut.writeInt(batchRows.get(b));
+                        offset += data.length;
+                        blocks++;
+                    }
+                    batch.clear();
+                    batchRows.clear();
+                }
+            }
+
+            index.writeTo(out);
+            out.writeLong(offset);
+            out.writeInt(blocks);
+            out.writeInt(MAGIC);
+            out.flush();
+            file.getFD().sync();
+            written = offset + index.size() + TRAILER;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        CatalogSnapshot.moveReplacing(tmp, path);
+        return written;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // ==================== ОТВАРЯНЕ ====================
+
+    /** Дали файлът започва с подписа на този формат. */
+    public static boolean isCompressed(Path path) {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Отваря файла и прочита само индекса на блоковете. Всеки запис от
+     * индекса се проверява (блокът е между подписа и индекса, размерите и
+     * броят редове са допустими) - повреден файл дава IOException.
+     */
+    public static CompressedCatalogFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < Integer.BYTES + TRAILER) {
+                throw new IOException("Файлът е твърде кратък за компресиран каталог");
+            }
+            ByteBuffer trailer = readFully(channel, size - TRAILER, TRAILER);
+            long indexOffset = trailer.getLong();
+            int blocks = trailer.getInt();
+            if (trailer.getInt() != MAGIC || blocks < 0 || indexOffset < Integer.BYTES
+                    || indexOffset + (long) blocks * INDEX_ENTRY + TRAILER != size) {
+                throw new IOException("Невалиден или непълен компресиран каталог");
+            }
+
+            ByteBuffer index = readFully(channel, indexOffset, blocks * INDEX_ENTRY);
+            long[] offsets = new long[blocks];
+            int[] compressedSizes = new int[blocks];
+            int[] rawSizes = new int[blocks];
+            int[] firstRows = new int[blocks + 1];
+            for (int b = 0; b < blocks; b++) {
+                long offset = index.getLong();
+                int compressedSize = index.getInt();
+                int rawSize = index.getInt();
+                int rows = index.getInt();
+                if (offset < Integer.BYTES || compressedSize < 0 || offset + compressedSize > indexOffset
+                        || rawSize < 0 || rawSize > (long) compressedSize * MAX_RATIO
+                        || rows < 0 || rows > rawSize || (long) firstRows[b] + rows > Integer.MAX_VALUE) {
+                    throw new IOException("Повреден индекс на компресиран каталог (блок " + b + ")");
+                }
+                offsets[b] = offset;
+                compressedSizes[b] = compressedSize;
+                rawSizes[b] = rawSize;
+                firstRows[b + 1] = firstRows[b] + rows;
+            }
+            return new CompressedCatalogFile(channel, size, offsets, compressedSizes, rawSizes, firstRows);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException("Неочакван край на файла");
+            }
+        }
+        return buf.flip();
+    }
+
+    // ==================== ЧЕТЕНЕ ====================
+
+    /** Броят обекти (редове) във файла. */
+    public int size() {
+        return firstRows[firstRows.length - 1];
+    }
+
+    public int blockCount() {
+        return offsets.length;
+    }
+
+    public long fileSize() {
+        return fileSize;
+    }
+
+    /** Размерът на редовете без компресия - колкото би бил catalog.txt. */
+    public long rawSize() {
+        long total = 0;
+        for (int size : rawSizes) {
+            total += size;
+        }
+        return total;
+    }
+
+    /**
+     * Всички обекти: блоковете се четат, разкомпресират и парсират
+     * паралелно (с парсера на CsvFileLoader), по ред на файла.
+     */
+    public CsvFileLoader.Result loadAll(Function<String, AudioItem> fallback) throws IOException {
+        long start = System.nanoTime();
+        try {
+            List<AudioItem> items = IntStream.range(0, blockCount())
+                    .parallel()
+                    .mapToObj(b -> CsvFileLoader.parseChunk(ByteBuffer.wrap(readBlock(b)), fallback))
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList());
+            return new CsvFileLoader.Result(items, fileSize, System.nanoTime() - start);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** Разкомпресираният блок; FileChannel позволява четене от няколко нишки. */
+    private byte[] readBlock(int block) {
+        Inflater local = new Inflater();
+        try {
+            return inflate(local, readFully(channel, offsets[block], compressedSizes[block]), rawSizes[block]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            local.end();
+        }
+    }
+
+    /**
+     * Обектът на реда (от 0), или null за невалиден ред. Разкомпресира се
+     * само блокът, в който е редът.
+     */
+    public AudioItem get(int row, Function<String, AudioItem> parser) throws IOException {
+        Objects.checkIndex(row, size());
+        int block = blockOf(row);
+        if (block != cachedBlock) {
+            loadBlock(block);
+        }
+        int line = row - firstRows[block];
+        int from = cachedLineStarts[line];
+        int to = line + 1 < cachedLineStarts.length ? cachedLineStarts[line + 1] : rawSizes[block];
+        return parser.apply(new String(cachedBytes, from, to - from - 1, StandardCharsets.UTF_8));
+    }
+
+    /** Блокът с реда - двоично търсене по първите редове на блоковете. */
+    private int blockOf(int row) {
+        int low = 0;
+        int high = blockCount() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (firstRows[mid] <= row) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private void loadBlock(int block) throws IOException {
+        ByteBuffer compressed = readFully(channel, offsets[block], compressedSizes[block]);
+        inflater.reset();
+        byte[] raw;
+        try {
+            raw = inflate(inflater, compressed, rawSizes[block]);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        int[] starts = new int[firstRows[block + 1] - firstRows[block]];
+        // starts[0] = 0; редът след всяко '\n' (последното е краят на блока)
+        for (int i = 0, line = 1; line < starts.length; i++) {
+            if (i == raw.length) {
+                throw new IOException("Повреден блок: по-малко редове от записаните в индекса");
+            }
+            if (raw[i] == '\n') {
+                starts[line++] = i + 1;
+            }
+        }
+        if (starts.length > 0 && raw[raw.length - 1] != '\n') {
+            throw new IOException("Повреден блок: последният ред не е завършен");
+        }
+        cachedBlock = block;
+        cachedBytes = raw;
+        cachedLineStarts = starts;
+    }
+
+    private static byte[] inflate(Inflater inflater, ByteBuffer compressed, int rawSize) {
+        byte[] raw = new byte[rawSize];
+        inflater.setInput(compressed);
+        try {
+            int length = 0;
+            while (length < rawSize && !inflater.finished()) {
+                int n = inflater.inflate(raw, length, rawSize - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != rawSize) {
+                throw new UncheckedIOException(new IOException("Повреден блок: " + length + " от " + rawSize + " байта"));
+            }
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("Повреден блок: " + e.getMessage(), e));
+        }
+        return raw;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        cachedBytes = null;
+        channel.close();
+    }
+}
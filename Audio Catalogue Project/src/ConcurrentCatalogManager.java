@@ -0,0 +1,437 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Каталог за едновременна работа от много нишки (напр. заявките на сървър).
+ *
+ * Четенето никога не чака: каталогът е неизменим snapshot (масив + индекси),
+ * достъпен през една volatile референция. Всяка промяна на каталога се прави
+ * под заключване, създава нов snapshot и го публикува наведнъж - четящите
+ * нишки виждат или старото, или новото състояние, никога междинно.
+ * Индексите за търсене и атрибути и сортираните изгледи се обновяват
+ * от пишещата нишка под заключването и влизат в новата версия като копия
+ * само за четене, които споделят масивите си с предишната (SearchIndex.copy,
+ * AttributeIndex.copy) - четенето никога не изгражда нищо. Индексът по
+ * заглавие се поддържа текущо (ConcurrentHashMap с неизменими списъци),
+ * защото го ползват и добавянето в плейлист, и изтриването. Това е изгодно при
+ * много четения и редки промени; пакетните добавяния (addAll) струват едно
+ * копиране.
+ *
+ * Плейлистите са неизменими списъци в ConcurrentHashMap. Промяната на един
+ * плейлист минава през compute за неговия ключ, така че различни плейлисти
+ * се променят паралелно, а един и същ - последователно. getPlaylist връща
+ * неизменим списък, който не се променя под ръцете на четящия.
+ *
+ * За разлика от CatalogManager тук няма конзолен изход - методите връщат
+ * резултат, а показването е работа на извикващия.
+ */
+public class ConcurrentCatalogManager {
+
+    /** Неизменимо състояние на каталога заедно с индексите на тази версия. */
+    private static final class Snapshot {
+        final List<AudioItem> items;
+        final CatalogStats stats;
+        final SearchIndex search;
+        final AttributeIndex attributes;
+        final Map<SortedViews.Order, List<AudioItem>> sorted;
+
+        Snapshot(List<AudioItem> items, CatalogStats stats, SearchIndex search, AttributeIndex attributes,
+                 Map<SortedViews.Order, List<AudioItem>> sorted) {
+            this.items = items;
+            this.stats = stats;
+            this.search = search;
+            this.attributes = attributes;
+            this.sorted = sorted;
+        }
+    }
+
+    /** Неизменима статистика на една версия на каталога. */
+    public static final class CatalogStats {
+        private final long[] categoryCounts;
+        public final long itemCount;
+        public final double totalDuration;
+        public final String topGenre;
+
+        CatalogStats(CatalogStatistics source) {
+            categoryCounts = new long[AudioCategory.values().length];
+            for (AudioCategory category : AudioCategory.values()) {
+                categoryCounts[category.ordinal()] = source.count(category);
+            }
+            itemCount = source.itemCount();
+            totalDuration = source.totalDuration();
+            topGenre = source.topGenre();
+        }
+
+        public long count(AudioCategory category) {
+            return categoryCounts[category.ordinal()];
+        }
+    }
+
+    /** Неизменим плейлист с текущата му продължителност. */
+    private static final class PlaylistState {
+        static final PlaylistState EMPTY = new PlaylistState(Collections.emptyList(), 0);
+
+        final List<AudioItem> items;
+        final double duration;
+
+        PlaylistState(List<AudioItem> items, double duration) {
+            this.items = items;
+            this.duration = duration;
+        }
+
+        PlaylistState with(AudioItem item) {
+            List<AudioItem> copy = new ArrayList<>(items.size() + 1);
+            copy.addAll(items);
+            copy.add(item);
+            return new PlaylistState(Collections.unmodifiableList(copy), duration + item.getDuration());
+        }
+
+        PlaylistState without(Set<AudioItem> doomed) {
+            List<AudioItem> copy = new ArrayList<>(items.size());
+            double total = 0;
+            for (AudioItem item : items) {
+                if (!doomed.contains(item)) {
+                    copy.add(item);
+                    total += item.getDuration();
+                }
+            }
+            return copy.size() == items.size() ? this
+                    : new PlaylistState(Collections.unmodifiableList(copy), total);
+        }
+    }
+
+    private final ReentrantLock catalogLock = new ReentrantLock();
+    private volatile Snapshot snapshot;
+    // Само под catalogLock
+    private final CatalogStatistics statistics = new CatalogStatistics();
+    private long nextSeq = 0;
+    // Обектите, които в момента са в каталога (по референция) - за проверка
+    // при добавяне в плейлист без заключване на каталога
+    private final Set<AudioItem> live = ConcurrentHashMap.newKeySet();
+    // TitleIndex.fold(заглавие) -> обектите в реда на добавяне; пише се само под catalogLock
+    private final ConcurrentHashMap<String, List<AudioItem>> titles = new ConcurrentHashMap<>();
+    // Само под catalogLock; във всяка версия влизат копия
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final AttributeIndex attributeIndex = new AttributeIndex();
+    private final Map<SortedViews.Order, List<AudioItem>> sorted = new EnumMap<>(SortedViews.Order.class);
+
+    private final ConcurrentHashMap<String, PlaylistState> playlists = new ConcurrentHashMap<>();
+
+    public ConcurrentCatalogManager() {
+        for (SortedViews.Order order : SortedViews.Order.values()) {
+            sorted.put(order, Collections.emptyList());
+        }
+        publish(Collections.emptyList());
+    }
+
+    /**
+     * Копие на каталога и плейлистите на обикновен CatalogManager (напр.
+     * след зареждане от snapshot/CSV). Обектите са същите и запазват
+     * поредните си номера, така че и двата индекса остават валидни.
+     */
+    public static ConcurrentCatalogManager copyOf(CatalogManager manager) {
+        ConcurrentCatalogManager copy = new ConcurrentCatalogManager();
+        copy.add(manager.getCatalog(), false);
+        for (String name : manager.getPlaylistNames()) {
+            List<AudioItem> items = new ArrayList<>(manager.getPlaylist(name));
+            double duration = items.stream().mapToDouble(AudioItem::getDuration).sum();
+            copy.playlists.put(name, new PlaylistState(Collections.unmodifiableList(items), duration));
+        }
+        return copy;
+    }
+
+    // ==================== КАТАЛОГ (ЗАПИС) ====================
+
+    public boolean addItem(AudioItem item) {
+        return item != null && addAll(Collections.singletonList(item)) == 1;
+    }
+
+    /** Добавя всички обекти с едно копиране на каталога. Връща броя добавени. */
+    public int addAll(Collection<? extends AudioItem> items) {
+        return add(items, true);
+    }
+
+    private int add(Collection<? extends AudioItem> items, boolean assignSeq) {
+        catalogLock.lock();
+        try {
+            List<AudioItem> current = snapshot.items;
+            List<AudioItem> next = new ArrayList<>(current.size() + items.size());
+            next.addAll(current);
+            List<AudioItem> fresh = new ArrayList<>(items.size());
+            for (AudioItem item : items) {
+                if (item != null && live.add(item)) {
+                    if (assignSeq) {
+                        item.seq = nextSeq++;
+                    } else {
+                        nextSeq = Math.max(nextSeq, item.seq + 1);
+                    }
+                    statistics.itemAdded(item);
+                    titles.merge(TitleIndex.fold(item.getTitle()), Collections.singletonList(item),
+                        ConcurrentCatalogManager::concat);
+                    next.add(item);
+                    fresh.add(item);
+                }
+            }
+            if (!fresh.isEmpty()) {
+                indexAdded(fresh);
+                publish(next);
+            }
+            return fresh.size();
+        } finally {
+            catalogLock.unlock();
+        }
+    }
+
+    /**
+     * Изтрива всички обекти с даденото заглавие от каталога и от всички
+     * плейлисти. Връща броя изтрити обекти.
+     */
+    public int deleteItem(String title) {
+        Set<AudioItem> doomed = Collections.newSetFromMap(new IdentityHashMap<>());
+        catalogLock.lock();
+        try {
+            List<AudioItem> matches = titles.remove(TitleIndex.fold(title));
+            if (matches == null) {
+                return 0;
+            }
+            doomed.addAll(matches);
+            List<AudioItem> next = new ArrayList<>(snapshot.items.size());
+            for (AudioItem item : snapshot.items) {
+                if (!doomed.contains(item)) {
+                    next.add(item);
+                }
+            }
+            for (AudioItem item : doomed) {
+                live.remove(item);
+                statistics.itemRemoved(item);
+                searchIndex.remove(item);
+                attributeIndex.remove(item);
+            }
+            sorted.replaceAll((order, view) -> without(view, doomed));
+            publish(next);
+        } finally {
+            catalogLock.unlock();
+        }
+
+        // Обектите вече не са в live, така че паралелно addToPlaylist няма да
+        // ги добави отново след това почистване
+        for (String name : playlists.keySet()) {
+            playlists.computeIfPresent(name, (k, state) -> state.without(doomed));
+        }
+        return doomed.size();
+    }
+
+    private static List<AudioItem> concat(List<AudioItem> a, List<AudioItem> b) {
+        List<AudioItem> joined = new ArrayList<>(a.size() + b.size());
+        joined.addAll(a);
+        joined.addAll(b);
+        return Collections.unmodifiableList(joined);
+    }
+
+    /**
+     * Добавя новите обекти в индексите и сортираните изгледи. В индексите
+     * влизат по seq (копираните от CatalogManager може да са в друг ред),
+     * за да се добавят в края, а в изгледите - чрез сливане, O(n + k log n).
+     */
+    private void indexAdded(List<AudioItem> fresh) {
+        List<AudioItem> bySeq = new ArrayList<>(fresh);
+        bySeq.sort(Comparator.comparingLong(item -> item.seq));
+        for (AudioItem item : bySeq) {
+            searchIndex.add(item);
+            attributeIndex.add(item);
+        }
+        sorted.replaceAll((order, view) -> {
+            List<AudioItem> added = new ArrayList<>(fresh);
+            added.sort(order.comparator());
+            return merge(view, added, order.comparator());
+        });
+    }
+
+    /**
+     * Слива сортирания изглед с новите обекти (също сортирани): мястото на
+     * всеки нов се намира с двоично търсене, а участъците между тях се
+     * копират наведнъж. Равни няма - сравнението завършва по seq.
+     */
+    private static List<AudioItem> merge(List<AudioItem> view, List<AudioItem> added, Comparator<AudioItem> order) {
+        List<AudioItem> merged = new ArrayList<>(view.size() + added.size());
+        int from = 0;
+        for (AudioItem item : added) {
+            int at = Collections.binarySearch(view, item, order);
+            int to = at < 0 ? -at - 1 : at;
+            merged.addAll(view.subList(from, to));
+            merged.add(item);
+            from = to;
+        }
+        merged.addAll(view.subList(from, view.size()));
+        return Collections.unmodifiableList(merged);
+    }
+
+    private static List<AudioItem> without(List<AudioItem> view, Set<AudioItem> doomed) {
+        List<AudioItem> kept = new ArrayList<>(view.size());
+        for (AudioItem item : view) {
+            if (!doomed.contains(item)) {
+                kept.add(item);
+            }
+        }
+        return Collections.unmodifiableList(kept);
+    }
+
+    /** Само под catalogLock (или от конструктора). */
+    private void publish(List<AudioItem> items) {
+        snapshot = new Snapshot(Collections.unmodifiableList(items), new CatalogStats(statistics),
+            searchIndex.copy(), attributeIndex.copy(), new EnumMap<>(sorted));
+    }
+
+    // ==================== КАТАЛОГ (ЧЕТЕНЕ) ====================
+
+    /** Текущият каталог - неизменим списък в реда на добавяне. */
+    public List<AudioItem> getCatalog() {
+        return snapshot.items;
+    }
+
+    public int getCatalogSize() {
+        return snapshot.items.size();
+    }
+
+    /** Най-рано добавеният обект с това заглавие (без значение на главни/малки букви). */
+    public AudioItem findByTitle(String title) {
+        List<AudioItem> items = titles.get(TitleIndex.fold(title));
+        return items != null ? items.get(0) : null;
+    }
+
+    public List<AudioItem> search(String query) {
+        return snapshot.search.search(query);
+    }
+
+    public List<AudioItem> filterByCategory(AudioCategory category) {
+        return snapshot.attributes.byCategory(category);
+    }
+
+    public List<AudioItem> filterByGenre(String genre) {
+        return snapshot.attributes.byGenre(genre);
+    }
+
+    public List<AudioItem> filterByAuthor(String author) {
+        return snapshot.attributes.byAuthor(author);
+    }
+
+    public List<AudioItem> filterByYear(int year) {
+        return snapshot.attributes.byYear(year);
+    }
+
+    public List<AudioItem> filterByYearRange(int startYear, int endYear) {
+        return snapshot.attributes.byYearRange(startYear, endYear);
+    }
+
+    // Страници като CatalogManager.search/findBy*: всички страници от една
+    // заявка четат една версия, а индексът се обхожда от курсора нататък.
+    // Невалиден token дава IllegalArgumentException.
+
+    public QueryPage search(String query, String token, int limit) {
+        SearchIndex index = snapshot.search;
+        return QueryPage.bySeq((afterSeq, max) -> index.searchAfter(query, afterSeq, max),
+            () -> index.count(query), token, limit);
+    }
+
+    public QueryPage findByCategory(AudioCategory category, String token, int limit) {
+        return QueryPage.bySeq(snapshot.attributes.viewByCategory(category), token, limit);
+    }
+
+    public QueryPage findByGenre(String genre, String token, int limit) {
+        return QueryPage.bySeq(snapshot.attributes.viewByGenre(genre), token, limit);
+    }
+
+    public QueryPage findByAuthor(String author, String token, int limit) {
+        return QueryPage.bySeq(snapshot.attributes.viewByAuthor(author), token, limit);
+    }
+
+    public QueryPage findByYear(int year, String token, int limit) {
+        return QueryPage.bySeq(snapshot.attributes.viewByYear(year), token, limit);
+    }
+
+    public QueryPage findByYearRange(int startYear, int endYear, String token, int limit) {
+        AttributeIndex index = snapshot.attributes;
+        return QueryPage.bySeq((afterSeq, max) -> index.byYearRangeAfter(startYear, endYear, afterSeq, max),
+            () -> index.countYearRange(startYear, endYear), token, limit);
+    }
+
+    /** Каталогът в дадения ред (неизменим; поддържа се при всяка промяна). */
+    public List<AudioItem> sorted(SortedViews.Order order) {
+        return snapshot.sorted.get(order);
+    }
+
+    public CatalogStats getStatistics() {
+        return snapshot.stats;
+    }
+
+    // ==================== ПЛЕЙЛИСТИ ====================
+
+    /** Връща false, ако името е празно или вече съществува. */
+    public boolean createPlaylist(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return false;
+        }
+        return playlists.putIfAbsent(name, PlaylistState.EMPTY) == null;
+    }
+
+    public boolean deletePlaylist(String name) {
+        return playlists.remove(name) != null;
+    }
+
+    /**
+     * Добавя най-рано добавения обект с това заглавие. Връща false, ако
+     * плейлистът или обектът липсват, или обектът вече е в плейлиста.
+     */
+    public boolean addToPlaylist(String playlistName, String title) {
+        AudioItem item = findByTitle(title);
+        if (item == null) {
+            return false;
+        }
+        boolean[] added = {false};
+        playlists.computeIfPresent(playlistName, (name, state) -> {
+            // Проверката е под заключването на плейлиста - ако обектът е
+            // изтрит междувременно, каскадата по-горе идва след нас или вече
+            // го е махнала от live
+            if (!live.contains(item) || state.items.contains(item)) {
+                return state;
+            }
+            added[0] = true;
+            return state.with(item);
+        });
+        return added[0];
+    }
+
+    public boolean removeFromPlaylist(String playlistName, String title) {
+        boolean[] removed = {false};
+        playlists.computeIfPresent(playlistName, (name, state) -> {
+            Set<AudioItem> doomed = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (AudioItem item : state.items) {
+                if (item.getTitle().equalsIgnoreCase(title)) {
+                    doomed.add(item);
+                }
+            }
+            removed[0] = !doomed.isEmpty();
+            return state.without(doomed);
+        });
+        return removed[0];
+    }
+
+    /** Неизменим списък с обектите на плейлиста или null, ако няма такъв. */
+    public List<AudioItem> getPlaylist(String name) {
+        PlaylistState state = playlists.get(name);
+        return state != null ? state.items : null;
+    }
+
+    public double getPlaylistDuration(String name) {
+        PlaylistState state = playlists.get(name);
+        return state != null ? state.duration : 0;
+    }
+
+    /** Имената на плейлистите, сортирани. */
+    public List<String> getPlaylistNames() {
+        List<String> names = new ArrayList<>(playlists.keySet());
+        Collections.sort(names);
+        return names;
+    }
+}
@@ -0,0 +1,152 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Кодиране и разчитане на CSV записите на аудио обектите.
+ *
+ * - Поле, което съдържа запетая или кавичка, се огражда в кавички, а
+ *   кавичките в него се удвояват ("") - както в RFC 4180.
+ * - Всеки запис е на един ред: нов ред в стойност се записва като интервал.
+ * - Числата не зависят от Locale - винаги с точка (3.00, а не 3,00).
+ *
+ * Записът се пише директно в подаден StringBuilder, който може да се
+ * преизползва за много записи, без String.format за всеки от тях.
+ */
+public final class CsvCodec {
+
+    private CsvCodec() {
+    }
+
+    // ==================== ЗАПИС ====================
+
+    public static void appendField(StringBuilder out, String value) {
+        if (!needsQuoting(value)) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append("\"\"");
+            } else if (c == '\n' || c == '\r') {
+                out.append(' ');
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Продължителност с точно два знака след точката, когато стойността е
+     * точно такава (3.00, 4.25). Иначе - най-краткият запис, който се
+     * разчита обратно до същото число.
+     */
+    public static void appendDuration(StringBuilder out, double value) {
+        long hundredths = Math.round(value * 100);
+        if (Math.abs(value) < 1e13 && hundredths / 100.0 == value) {
+            if (hundredths < 0) {
+                out.append('-');
+                hundredths = -hundredths;
+            }
+            long fraction = hundredths % 100;
+            out.append(hundredths / 100).append('.');
+            if (fraction < 10) {
+                out.append('0');
+            }
+            out.append(fraction);
+        } else {
+            out.append(value);
+        }
+    }
+
+    private static boolean needsQuoting(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ==================== ЧЕТЕНЕ ====================
+
+    /**
+     * Разделя ред на полета, като спазва кавичките. За разлика от
+     * String.split празните полета в края се запазват.
+     */
+    public static String[] split(String line) {
+        List<String> fields = new ArrayList<>(8);
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        int len = line.length();
+
+        while (true) {
+            field.setLength(0);
+            if (i < len && line.charAt(i) == '"') {
+                i++;
+                while (i < len) {
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < len && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                }
+                // Текст след затварящата кавичка (невалиден запис) се добавя както е
+                while (i < len && line.charAt(i) != ',') {
+                    field.append(line.charAt(i++));
+                }
+            } else {
+                int comma = line.indexOf(',', i);
+                int end = comma < 0 ? len : comma;
+                field.append(line, i, end);
+                i = end;
+            }
+            fields.add(field.toString());
+
+            if (i >= len) {
+                break;
+            }
+            i++; // запетаята
+        }
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * Поправя записи от старите файлове, в които продължителността е
+     * записана с десетична запетая (напр. "3,00" при български Locale) и
+     * затова е разделена на две полета.
+     */
+    public static String[] repairLocaleDecimal(String[] parts, int expected) {
+        if (parts.length != expected + 1 || !isInteger(parts[5])
+                || parts[6].length() != 2 || !isInteger(parts[6])) {
+            return parts;
+        }
+        String[] repaired = new String[expected];
+        System.arraycopy(parts, 0, repaired, 0, 5);
+        repaired[5] = parts[5] + "." + parts[6];
+        System.arraycopy(parts, 7, repaired, 6, expected - 6);
+        return repaired;
+    }
+
+    private static boolean isInteger(String s) {
+        int start = s.startsWith("-") ? 1 : 0;
+        if (s.length() == start) {
+            return false;
+        }
+        for (int i = start; i < s.length(); i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,281 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Каталог само за четене, който не зарежда CSV файла в паметта.
+ *
+ * Файлът се map-ва (memory-mapping) и при отваряне се преброяват редовете,
+ * като се пази началото само на всеки {@value #STRIDE}-и ред - около
+ * 0.5 байта на ред. До произволен ред се стига от най-близката такава
+ * точка с обхождане на най-много {@value #STRIDE} реда. Байтовете на файла
+ * са в кеша на ОС, а не в heap-а.
+ *
+ * Обектите (Song, Album, ...) се създават едва когато ред бъде поискан -
+ * при get, при преглед или като резултат от търсене - и се пазят в LRU
+ * кеш с ограничен размер. Търсенето обхожда суровите редове и създава
+ * обекти само за съвпаденията.
+ *
+ * Класът не е нишково безопасен. Файлът не бива да се променя, докато е
+ * отворен (под Windows и не може да бъде презаписан до GC на буферите).
+ */
+public class LazyCatalog implements AutoCloseable {
+    private static final int STRIDE = 16;
+    private static final int SCAN_BUFFER = 1 << 16;
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+    public static final int DEFAULT_CACHE_SIZE = 10_000;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long fileSize;
+    private final Function<String, AudioItem> parser;
+
+    // Началото на редове 0, STRIDE, 2*STRIDE, ... (празните редове не се броят)
+    private long[] checkpoints = new long[16];
+    private int rows;
+
+    private final Map<Integer, AudioItem> cache;
+    private byte[] lineBuffer = new byte[256];
+
+    private LazyCatalog(FileChannel channel, Function<String, AudioItem> parser, int cacheSize)
+            throws IOException {
+        this.channel = channel;
+        this.parser = parser;
+        this.fileSize = channel.size();
+        int count = (int) ((fileSize + SEGMENT_SIZE - 1) >>> SEGMENT_BITS);
+        this.segments = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long start = (long) i << SEGMENT_BITS;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                Math.min(SEGMENT_SIZE, fileSize - start));
+        }
+        this.cache = new LinkedHashMap<Integer, AudioItem>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, AudioItem> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Отваря файла и преброява редовете. parser превръща ред в обект
+     * (обикновено CatalogManager.parseCSVLine); null за невалиден ред.
+     */
+    public static LazyCatalog open(Path file, Function<String, AudioItem> parser, int cacheSize)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            LazyCatalog catalog = new LazyCatalog(channel, parser, cacheSize);
+            catalog.indexRows();
+            return catalog;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Преброява редовете с едно последователно четене на файла на парчета
+     * от 64 KB (парче никога не пресича граница на сегмент).
+     */
+    private void indexRows() {
+        byte[] buffer = new byte[SCAN_BUFFER];
+        long lineStart = 0;
+        boolean blank = true;
+        for (long base = 0; base < fileSize; base += SCAN_BUFFER) {
+            int length = (int) Math.min(SCAN_BUFFER, fileSize - base);
+            segments[(int) (base >>> SEGMENT_BITS)].get((int) (base & (SEGMENT_SIZE - 1)), buffer, 0, length);
+            for (int i = 0; i < length; i++) {
+                byte b = buffer[i];
+                if (b == '\n') {
+                    if (!blank) {
+                        addRow(lineStart);
+                    }
+                    lineStart = base + i + 1;
+                    blank = true;
+                } else if (blank && b != '\r' && b != ' ' && b != '\t') {
+                    blank = false;
+                }
+            }
+        }
+        if (!blank) {
+            addRow(lineStart);
+        }
+        checkpoints = Arrays.copyOf(checkpoints, (rows + STRIDE - 1) / STRIDE);
+    }
+
+    private void addRow(long start) {
+        if (rows % STRIDE == 0) {
+            if (rows / STRIDE == checkpoints.length) {
+                checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+            }
+            checkpoints[rows / STRIDE] = start;
+        }
+        rows++;
+    }
+
+    // ==================== ЧЕТЕНЕ ====================
+
+    /** Броят редове (празните не се броят). */
+    public int size() {
+        return rows;
+    }
+
+    public long fileSize() {
+        return fileSize;
+    }
+
+    /** Броят обекти в кеша в момента. */
+    public int cachedCount() {
+        return cache.size();
+    }
+
+    /** Обектът на реда (от 0); създава се при първото поискване. */
+    public AudioItem get(int row) {
+        Objects.checkIndex(row, rows);
+        AudioItem item = cache.get(row);
+        return item != null ? item : materialize(row, rowStart(row));
+    }
+
+    private AudioItem materialize(int row, long start) {
+        AudioItem item = parser.apply(line(start));
+        if (item != null) {
+            cache.put(row, item);
+        }
+        return item;
+    }
+
+    /**
+     * Обектите на редовете от from (от 0) до from + count, по позиция:
+     * i-тият елемент е редът from + i, а на невалиден ред стои null, за да
+     * не се разминава номерацията.
+     */
+    public List<AudioItem> page(int from, int count) {
+        Objects.checkIndex(from, rows);
+        List<AudioItem> items = new ArrayList<>();
+        int end = (int) Math.min(rows, (long) from + count);
+        for (int row = from; row < end; row++) {
+            items.add(get(row));
+        }
+        return items;
+    }
+
+    /**
+     * Обектите, чието заглавие, автор или жанр съдържа текста (без значение
+     * от малки/главни букви), до limit. Обхождат се суровите редове - обекти
+     * се създават само за съвпаденията.
+     */
+    public List<AudioItem> search(String text, int limit) {
+        String q = text.toLowerCase();
+        List<AudioItem> results = new ArrayList<>();
+        long pos = 0;
+        int row = 0;
+        while (pos < fileSize && results.size() < limit) {
+            long next = nextLine(pos);
+            if (isBlank(pos, next)) {
+                pos = next;
+                continue;
+            }
+            String line = line(pos);
+            // Бърза проверка върху целия ред, преди да се разделя на полета
+            if (line.toLowerCase().contains(q) && matches(CsvCodec.split(line), q)) {
+                AudioItem item = cache.get(row);
+                if (item == null) {
+                    item = materialize(row, pos);
+                }
+                if (item != null) {
+                    results.add(item);
+                }
+            }
+            row++;
+            pos = next;
+        }
+        return results;
+    }
+
+    private static boolean matches(String[] parts, String q) {
+        for (int i = 1; i <= 3 && i < parts.length; i++) {
+            if (parts[i].toLowerCase().contains(q)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Map-натите буфери се освобождават от GC; тук се затваря файлът. */
+    @Override
+    public void close() throws IOException {
+        cache.clear();
+        channel.close();
+    }
+
+    // ==================== РЕДОВЕ ====================
+
+    private long rowStart(int row) {
+        long pos = checkpoints[row / STRIDE];
+        for (int skip = row % STRIDE; skip > 0; ) {
+            long next = nextLine(pos);
+            if (!isBlank(pos, next)) {
+                skip--;
+            }
+            pos = next;
+        }
+        // Празни редове между точката и търсения ред
+        while (true) {
+            long next = nextLine(pos);
+            if (!isBlank(pos, next)) {
+                return pos;
+            }
+            pos = next;
+        }
+    }
+
+    /** Началото на следващия ред (или краят на файла). */
+    private long nextLine(long pos) {
+        while (pos < fileSize) {
+            if (byteAt(pos++) == '\n') {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    private boolean isBlank(long start, long end) {
+        for (long pos = start; pos < end; pos++) {
+            byte b = byteAt(pos);
+            if (b != '\n' && b != '\r' && b != ' ' && b != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Редът от позиция start без края на реда, декодиран като UTF-8. */
+    private String line(long start) {
+        int length = 0;
+        for (long pos = start; pos < fileSize; pos++) {
+            byte b = byteAt(pos);
+            if (b == '\n') {
+                break;
+            }
+            if (length == lineBuffer.length) {
+                lineBuffer = Arrays.copyOf(lineBuffer, length * 2);
+            }
+            lineBuffer[length++] = b;
+        }
+        if (length > 0 && lineBuffer[length - 1] == '\r') {
+            length--;
+        }
+        return new String(lineBuffer, 0, length, StandardCharsets.UTF_8).trim();
+    }
+
+    private byte byteAt(long pos) {
+        return segments[(int) (pos >>> SEGMENT_BITS)].get((int) (pos & (SEGMENT_SIZE - 1)));
+    }
+}
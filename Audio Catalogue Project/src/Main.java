@@ -1,14 +1,37 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.Scanner;
+import javax.management.JMException;
 
 public class Main {
+    private static final int LAZY_PAGE_SIZE = 20;
     private static Scanner scanner = new Scanner(System.in);
     private static CatalogManager manager = new CatalogManager();
 
     public static void main(String[] args) {
-        // Автоматично зареждане при старт
         System.out.println("🎵 Добре дошли в Аудио Организатор!");
-        manager.loadCatalogFromFile("catalog.txt");
-        manager.loadAllPlaylists("playlists.txt");
+        startMetrics();
+
+        // java Main --lazy [файл] - преглед на голям каталог без зареждане
+        if (args.length > 0 && args[0].equals("--lazy")) {
+            runLazy(args.length > 1 ? args[1] : "catalog.txt");
+            return;
+        }
+        // java Main --server [порт] - само HTTP сървър, без меню
+        boolean serverMode = args.length > 0 && args[0].equals("--server");
+        int port = serverMode && args.length > 1 ? parsePort(args[1]) : 8080;
+        if (port < 0) {
+            System.out.println("❌ Невалиден порт: " + args[1] + " (очаква се число от 1 до 65535)");
+            return;
+        }
+        loadCatalog();
+
+        if (serverMode) {
+            runServer(port);
+            return;
+        }
         
         boolean running = true;
 
@@ -63,10 +86,22 @@ public class Main {
                     case "15":
                         manager.showStatistics();
                         break;
+                    case "16":
+                        System.out.print("Заглавие: ");
+                        manager.showPlaylistsContaining(scanner.nextLine());
+                        break;
+                    case "17":
+                        movePlaylistItemMenu();
+                        break;
+                    case "18":
+                        manager.showMetrics();
+                        break;
+                    case "19":
+                        topKMenu();
+                        break;
                     case "0":
-                        // Автоматично запазване при изход
-                        manager.saveToFile("catalog.txt", manager.getCatalog());
-                        manager.saveAllPlaylists("playlists.txt");
+                        // Промените вече са в журнала - остава само да се затвори
+                        manager.closeJournal();
                         System.out.println("\n👋 Довиждане!");
                         running = false;
                         break;
@@ -100,6 +135,7 @@ public class Main {
         System.out.println("║  4. 🗑️  Изтриване от каталога                  ║");
         System.out.println("║  5. 📂 Филтриране                              ║");
         System.out.println("║  6. 🔤 Сортиране                               ║");
+        System.out.println("║  19. 🏆 Топ K (най-нови, най-дълги...)         ║");
         System.out.println("║                                                ║");
         System.out.println("║  ПЛЕЙЛИСТИ                                     ║");
         System.out.println("║  7. ➕ Създай плейлист                         ║");
@@ -108,11 +144,14 @@ public class Main {
         System.out.println("║  10. 👁️  Преглед на плейлист                    ║");
         System.out.println("║  11. 📋 Списък на плейлистите                  ║");
         System.out.println("║  12. 🗑️  Изтрий плейлист                        ║");
+        System.out.println("║  16. 🔎 В кои плейлисти е обект                ║");
+        System.out.println("║  17. ↕️  Премести в плейлист                    ║");
         System.out.println("║                                                ║");
         System.out.println("║  ФАЙЛОВЕ & СТАТИСТИКА                          ║");
         System.out.println("║  13. 💾 Запис                                  ║");
         System.out.println("║  14. 📂 Зареждане                              ║");
         System.out.println("║  15. 📊 Статистика                             ║");
+        System.out.println("║  18. ⏱️  Метрики на операциите                  ║");
         System.out.println("║                                                ║");
         System.out.println("║  0. 🚪 Изход                                   ║");
         System.out.println("╚════════════════════════════════════════════════╝");
@@ -239,6 +278,7 @@ public class Main {
         System.out.println("3. Автор");
         System.out.println("4. Година");
         System.out.println("5. Период (от-до)");
+        System.out.println("6. Съставна заявка (AND/OR/NOT, SORT, LIMIT, EXPLAIN)");
         System.out.print("\nИзбор: ");
         
         String choice = scanner.nextLine().trim();
@@ -280,6 +320,15 @@ public class Main {
                     manager.filterByYearRange(startYear, endYear);
                     break;
 
+                case "6":
+                    System.out.println("\nПолета: title, author, genre, category, year, duration");
+                    System.out.println("Оператори: = ~ (съдържа) > >= < <= и период a..b");
+                    System.out.println("Пример: genre=поп AND year=1990..2000 AND NOT category=SONG SORT duration LIMIT 10");
+                    System.out.println("С EXPLAIN отпред се показва и планът на изпълнение.");
+                    System.out.print("Заявка: ");
+                    manager.runQuery(scanner.nextLine());
+                    break;
+
                 default:
                     System.out.println("❌ Невалиден избор!");
             }
@@ -345,6 +394,81 @@ public class Main {
         }
     }
 
+    private static void topKMenu() {
+        clearScreen();
+        System.out.println("╔════════════════════════════════════════════════╗");
+        System.out.println("║         🏆 ТОП K                               ║");
+        System.out.println("╚════════════════════════════════════════════════╝\n");
+
+        System.out.println("Подреди по:");
+        System.out.println("1. Година (най-нови)");
+        System.out.println("2. Година (най-стари)");
+        System.out.println("3. Продължителност (най-дълги)");
+        System.out.println("4. Продължителност (най-кратки)");
+        System.out.println("5. Заглавие (А-Я)");
+        System.out.println("6. Автор (А-Я)");
+        System.out.print("\nИзбор: ");
+
+        String criteria;
+        boolean descending = false;
+        switch (scanner.nextLine().trim()) {
+            case "1":
+                criteria = "year";
+                descending = true;
+                break;
+            case "2":
+                criteria = "year";
+                break;
+            case "3":
+                criteria = "duration";
+                descending = true;
+                break;
+            case "4":
+                criteria = "duration";
+                break;
+            case "5":
+                criteria = "title";
+                break;
+            case "6":
+                criteria = "author";
+                break;
+            default:
+                System.out.println("❌ Невалиден избор на критерий!");
+                return;
+        }
+
+        System.out.println("\nКатегория (Enter = всички):");
+        System.out.println("1. 🎵 Песен");
+        System.out.println("2. 💿 Албум");
+        System.out.println("3. 🎙️  Подкаст");
+        System.out.println("4. 📚 Аудиокнига");
+        System.out.print("Тип: ");
+        String catChoice = scanner.nextLine().trim();
+        AudioCategory category = null;
+        if (!catChoice.isEmpty()) {
+            int catIndex;
+            try {
+                catIndex = Integer.parseInt(catChoice) - 1;
+            } catch (NumberFormatException e) {
+                catIndex = -1;
+            }
+            if (catIndex < 0 || catIndex >= AudioCategory.values().length) {
+                System.out.println("❌ Невалиден тип!");
+                return;
+            }
+            category = AudioCategory.values()[catIndex];
+        }
+
+        System.out.print("Жанр (Enter = всички): ");
+        String genre = scanner.nextLine().trim();
+
+        System.out.print("Колко (Enter = 10): ");
+        String kText = scanner.nextLine().trim();
+        int k = kText.isEmpty() ? 10 : Integer.parseInt(kText);
+
+        manager.showTopK(criteria, descending, category, genre.isEmpty() ? null : genre, k);
+    }
+
     // ==================== ПЛЕЙЛИСТИ ====================
 
     private static void createPlaylistMenu() {
@@ -395,6 +519,22 @@ public class Main {
         manager.showPlaylist(name);
     }
 
+    private static void movePlaylistItemMenu() {
+        clearScreen();
+        System.out.println("╔════════════════════════════════════════════════╗");
+        System.out.println("║         ↕️  ПРЕМЕСТВАНЕ В ПЛЕЙЛИСТ              ║");
+        System.out.println("╚════════════════════════════════════════════════╝\n");
+
+        System.out.print("Име на плейлист: ");
+        String name = scanner.nextLine();
+        manager.showPlaylist(name);
+        System.out.print("От позиция: ");
+        int from = Integer.parseInt(scanner.nextLine());
+        System.out.print("На позиция: ");
+        int to = Integer.parseInt(scanner.nextLine());
+        manager.movePlaylistItem(name, from, to);
+    }
+
     private static void deletePlaylistMenu() {
         clearScreen();
         System.out.println("╔════════════════════════════════════════════════╗");
@@ -415,15 +555,16 @@ public class Main {
         System.out.println("╚════════════════════════════════════════════════╝\n");
         
         System.out.println("Какво да запазя?");
-        System.out.println("1. Целия каталог");
-        System.out.println("2. Конкретен плейлист");
+        System.out.println("1. Целия каталог и плейлистите (catalog.txt, playlists.txt)");
+        System.out.println("2. Конкретен плейлист (в реда на показване)");
+        System.out.println("3. Компресиран каталог (catalog.acz)");
         System.out.print("\nИзбор: ");
         
         String choice = scanner.nextLine().trim();
 
         switch (choice) {
             case "1":
-                manager.saveToFile("catalog.txt", manager.getCatalog());
+                manager.saveTextFiles("catalog.txt", "playlists.txt");
                 break;
             case "2":
                 System.out.print("Име на плейлист: ");
@@ -431,11 +572,14 @@ public class Main {
                 if (manager.getPlaylist(plName) != null) {
                     System.out.print("Име на файл (без разширение): ");
                     String fileName = scanner.nextLine();
-                    manager.saveToFile(fileName + ".txt", manager.getPlaylist(plName));
+                    manager.saveToFile(fileName + ".txt", manager.getPlaylistInDisplayOrder(plName));
                 } else {
                     System.out.println("❌ Няма такъв плейлист.");
                 }
                 break;
+            case "3":
+                manager.saveCompressed("catalog.acz", manager.getCatalog());
+                break;
             default:
                 System.out.println("❌ Невалиден избор!");
         }
@@ -450,6 +594,7 @@ public class Main {
         System.out.println("Какво да заредя?");
         System.out.println("1. Целия каталог (catalog.txt)");
         System.out.println("2. Плейлист от файл");
+        System.out.println("3. Компресиран каталог (catalog.acz)");
         System.out.print("\nИзбор: ");
         
         String choice = scanner.nextLine().trim();
@@ -465,6 +610,9 @@ public class Main {
                 String plName = scanner.nextLine();
                 manager.loadPlaylistFromFile(fileName, plName);
                 break;
+            case "3":
+                manager.loadCatalogFromFile("catalog.acz");
+                break;
             default:
                 System.out.println("❌ Невалиден избор!");
         }
@@ -472,6 +620,157 @@ public class Main {
 
     // ==================== ПОМОЩНИ МЕТОДИ ====================
 
+    /**
+     * Метриките се виждат в JConsole (AudioCatalogue), а с
+     * -Dmetrics.dumpSeconds=N се записват в metrics.txt на всеки N секунди.
+     */
+    private static void startMetrics() {
+        try {
+            manager.getMetrics().registerMBean();
+        } catch (JMException e) {
+            System.out.println("⚠️ Метриките не са достъпни през JMX: " + e.getMessage());
+        }
+        long period = Long.getLong("metrics.dumpSeconds", 0);
+        if (period > 0) {
+            manager.getMetrics().startDump(Paths.get("metrics.txt"), period);
+        }
+    }
+
+    // Автоматично зареждане при старт - от snapshot, ако е по-нов от текстовите файлове
+    private static void loadCatalog() {
+        boolean fromSnapshot = isNewer("catalog.bin", "catalog.txt", "playlists.txt")
+                && manager.loadSnapshot("catalog.bin");
+        if (!fromSnapshot) {
+            manager.loadCatalogFromFile("catalog.txt");
+            manager.loadAllPlaylists("playlists.txt");
+        }
+        // Промените от тук нататък се записват веднага в журнала
+        manager.openJournal("catalog.journal", "catalog.bin", fromSnapshot);
+    }
+
+    // Порт от командния ред; -1, ако не е число между 1 и 65535
+    private static int parsePort(String text) {
+        try {
+            int port = Integer.parseInt(text.trim());
+            return port >= 1 && port <= 65535 ? port : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Режим сървър: каталогът се копира в ConcurrentCatalogManager и се
+     * обслужва по HTTP до спиране на процеса (Ctrl+C).
+     */
+    private static void runServer(int port) {
+        ConcurrentCatalogManager catalog = ConcurrentCatalogManager.copyOf(manager);
+        // Сървърът само чете - журналът не е нужен
+        manager.closeJournal();
+
+        CatalogServer server;
+        try {
+            server = new CatalogServer(catalog, port);
+        } catch (IOException e) {
+            System.out.println("❌ Сървърът не може да стартира: " + e.getMessage());
+            return;
+        }
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        System.out.println("🌐 Сървърът слуша на http://localhost:" + server.getPort()
+                + " (" + catalog.getCatalogSize() + " обекта). Ctrl+C за спиране.");
+    }
+
+    /**
+     * Преглед на каталога само за четене през LazyCatalog: файлът не се
+     * зарежда, а обектите се създават само за показаните редове.
+     */
+    private static void runLazy(String filename) {
+        LazyCatalog catalog;
+        long start = System.nanoTime();
+        try {
+            catalog = LazyCatalog.open(Paths.get(filename), manager::parseCSVLine,
+                    LazyCatalog.DEFAULT_CACHE_SIZE);
+        } catch (IOException e) {
+            System.out.println("❌ Каталогът не може да бъде отворен: " + e.getMessage());
+            return;
+        }
+        System.out.println(String.format("📂 %s: %d реда, %.2f MB, отворен за %d ms",
+                filename, catalog.size(), catalog.fileSize() / 1048576.0, (System.nanoTime() - start) / 1_000_000));
+
+        boolean running = true;
+        while (running) {
+            System.out.println("\n🦥 ЛЕНИВ РЕЖИМ (само четене)");
+            System.out.println("1. 🔍 Търсене");
+            System.out.println("2. 📋 Преглед по редове");
+            System.out.println("3. 📊 Памет и кеш");
+            System.out.println("0. 🚪 Изход");
+            System.out.print("👉 Избери опция: ");
+
+            try {
+                switch (scanner.nextLine().trim()) {
+                    case "1": {
+                        System.out.print("Въведи текст за търсене (заглавие/автор/жанр): ");
+                        List<AudioItem> results = catalog.search(scanner.nextLine(), LAZY_PAGE_SIZE);
+                        if (results.isEmpty()) {
+                            System.out.println("❌ Нищо не е намерено.");
+                        } else {
+                            results.forEach(System.out::println);
+                            System.out.println("(показани първите до " + LAZY_PAGE_SIZE + ")");
+                        }
+                        break;
+                    }
+                    case "2": {
+                        System.out.print("От ред (1-" + catalog.size() + "): ");
+                        int from = Integer.parseInt(scanner.nextLine().trim()) - 1;
+                        if (from < 0 || from >= catalog.size()) {
+                            System.out.println("❌ Невалиден ред!");
+                            break;
+                        }
+                        int row = from + 1;
+                        for (AudioItem item : catalog.page(from, LAZY_PAGE_SIZE)) {
+                            System.out.println("  " + row++ + ". " + (item != null ? item : "⚠️ (невалиден ред)"));
+                        }
+                        break;
+                    }
+                    case "3": {
+                        Runtime runtime = Runtime.getRuntime();
+                        System.out.println("  Обекти в кеша: " + catalog.cachedCount() + " от " + catalog.size());
+                        System.out.println(String.format("  Заета памет: %.1f MB",
+                                (runtime.totalMemory() - runtime.freeMemory()) / 1048576.0));
+                        break;
+                    }
+                    case "0":
+                        running = false;
+                        break;
+                    default:
+                        System.out.println("❌ Невалидна опция! Опитай отново.");
+                }
+            } catch (Exception e) {
+                System.out.println("❌ Грешка: " + e.getMessage());
+            }
+        }
+        try {
+            catalog.close();
+        } catch (IOException e) {
+            System.out.println("⚠️ " + e.getMessage());
+        }
+        System.out.println("\n👋 Довиждане!");
+    }
+
+    // Дали файлът съществува и е записан не по-рано от останалите
+    private static boolean isNewer(String file, String... others) {
+        File f = new File(file);
+        if (!f.exists()) {
+            return false;
+        }
+        for (String other : others) {
+            if (new File(other).lastModified() > f.lastModified()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static void clearScreen() {
         // За Windows
         try {
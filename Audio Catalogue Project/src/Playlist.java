@@ -0,0 +1,300 @@
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Плейлист: подреден списък от обекти от каталога.
+ *
+ * Обектите са във възли на дърво по позиция (implicit treap - двоично
+ * дърво, в което позицията на възел е броят възли вляво от него), а до
+ * възлите на всеки обект се стига през хеш таблица. Така:
+ *  - contains и indexOf за обект са O(1) / O(log n), без обхождане;
+ *  - добавяне в края или на позиция, премахване на обект и преместване
+ *    от една позиция на друга са O(log n);
+ *  - обхождането е в реда на плейлиста, O(n).
+ *
+ * Обект може да се среща повече от веднъж (напр. при зареден файл) - тогава
+ * възлите му са свързани в списък. Обектите се сравняват по референция,
+ * както навсякъде в CatalogManager.
+ */
+public class Playlist extends AbstractList<AudioItem> {
+
+    private static final class Node {
+        final AudioItem item;
+        final int priority;
+        Node left;
+        Node right;
+        Node parent;
+        int size = 1;
+        // Следващ възел със същия обект
+        Node nextSame;
+
+        Node(AudioItem item, int priority) {
+            this.item = item;
+            this.priority = priority;
+        }
+    }
+
+    private final Map<AudioItem, Node> nodes = new IdentityHashMap<>();
+    private final Random random = new Random();
+    private Node root;
+
+    public Playlist() {
+    }
+
+    public Playlist(Collection<? extends AudioItem> items) {
+        addAll(items);
+    }
+
+    // ==================== ЧЕТЕНЕ ====================
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public AudioItem get(int index) {
+        checkIndex(index, size());
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node.item;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return nodes.containsKey(o);
+    }
+
+    /** Позицията на първото срещане на обекта, O(log n) на срещане. */
+    @Override
+    public int indexOf(Object o) {
+        int best = -1;
+        for (Node node = nodes.get(o); node != null; node = node.nextSame) {
+            int position = position(node);
+            if (best < 0 || position < best) {
+                best = position;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public Iterator<AudioItem> iterator() {
+        return new Iterator<AudioItem>() {
+            private final Deque<Node> stack = new ArrayDeque<>();
+            private Node current = root;
+
+            @Override
+            public boolean hasNext() {
+                return current != null || !stack.isEmpty();
+            }
+
+            @Override
+            public AudioItem next() {
+                while (current != null) {
+                    stack.push(current);
+                    current = current.left;
+                }
+                if (stack.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node node = stack.pop();
+                current = node.right;
+                return node.item;
+            }
+        };
+    }
+
+    // ==================== ПРОМЕНИ ====================
+
+    @Override
+    public void add(int index, AudioItem item) {
+        checkIndex(index, size() + 1);
+        Node node = new Node(item, random.nextInt());
+        Node same = nodes.put(item, node);
+        node.nextSame = same;
+        Node[] parts = split(root, index);
+        root = merge(merge(parts[0], node), parts[1]);
+        root.parent = null;
+        modCount++;
+    }
+
+    @Override
+    public AudioItem remove(int index) {
+        checkIndex(index, size());
+        Node node = removeAt(index);
+        unlinkSame(node);
+        return node.item;
+    }
+
+    /** Премахва всички срещания на обекта; връща колко са били. */
+    public int removeAll(AudioItem item) {
+        int removed = 0;
+        for (Node node = nodes.remove(item); node != null; node = node.nextSame) {
+            removeAt(position(node));
+            removed++;
+        }
+        return removed;
+    }
+
+    /** Премества обекта от позиция from на позиция to (и двете от 0). */
+    public void move(int from, int to) {
+        int size = size();
+        checkIndex(from, size);
+        checkIndex(to, size);
+        Node node = removeAt(from);
+        node.left = null;
+        node.right = null;
+        node.size = 1;
+        Node[] parts = split(root, to);
+        root = merge(merge(parts[0], node), parts[1]);
+        root.parent = null;
+        modCount++;
+    }
+
+    @Override
+    public AudioItem set(int index, AudioItem item) {
+        AudioItem old = remove(index);
+        add(index, item);
+        return old;
+    }
+
+    /** Преизгражда плейлиста само от запазените обекти, O(n log n). */
+    @Override
+    public boolean removeIf(Predicate<? super AudioItem> filter) {
+        List<AudioItem> kept = new ArrayList<>(size());
+        boolean removed = false;
+        for (AudioItem item : this) {
+            if (filter.test(item)) {
+                removed = true;
+            } else {
+                kept.add(item);
+            }
+        }
+        if (removed) {
+            clear();
+            addAll(kept);
+        }
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        nodes.clear();
+        modCount++;
+    }
+
+    // ==================== ДЪРВО ====================
+
+    private Node removeAt(int index) {
+        Node[] left = split(root, index);
+        Node[] right = split(left[1], 1);
+        root = merge(left[0], right[1]);
+        if (root != null) {
+            root.parent = null;
+        }
+        modCount++;
+        return right[0];
+    }
+
+    private void unlinkSame(Node node) {
+        Node head = nodes.get(node.item);
+        if (head == node) {
+            if (node.nextSame != null) {
+                nodes.put(node.item, node.nextSame);
+            } else {
+                nodes.remove(node.item);
+            }
+            return;
+        }
+        for (Node prev = head; prev != null; prev = prev.nextSame) {
+            if (prev.nextSame == node) {
+                prev.nextSame = node.nextSame;
+                return;
+            }
+        }
+    }
+
+    /** Позицията на възела - броят възли преди него, O(log n). */
+    private static int position(Node node) {
+        int position = size(node.left);
+        for (Node child = node; child.parent != null; child = child.parent) {
+            if (child.parent.right == child) {
+                position += size(child.parent.left) + 1;
+            }
+        }
+        return position;
+    }
+
+    /** Разделя дървото на първите count възела и останалите. */
+    private static Node[] split(Node node, int count) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (size(node.left) < count) {
+            Node[] parts = split(node.right, count - size(node.left) - 1);
+            node.right = parts[0];
+            update(node);
+            parts[0] = node;
+            if (parts[1] != null) {
+                parts[1].parent = null;
+            }
+            return parts;
+        }
+        Node[] parts = split(node.left, count);
+        node.left = parts[1];
+        update(node);
+        parts[1] = node;
+        if (parts[0] != null) {
+            parts[0].parent = null;
+        }
+        return parts;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    private static void update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+        if (node.left != null) {
+            node.left.parent = node;
+        }
+        if (node.right != null) {
+            node.right.parent = node;
+        }
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Позиция " + index + " извън 0.." + (bound - 1));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.*;
+
+/**
+ * Обратен индекс: обект от каталога -> плейлистите, които го съдържат.
+ *
+ * Пази и колко пъти обектът е в плейлиста (зареден плейлист може да го
+ * съдържа повече от веднъж), така че премахването на едно срещане не го
+ * изважда от индекса. Обектите се сравняват по референция - плейлистите
+ * държат същите обекти като каталога.
+ *
+ * Благодарение на него изтриването на обект от каталога обхожда само
+ * плейлистите, в които той е, а не всички.
+ */
+public class PlaylistMembership {
+    private final Map<AudioItem, Map<String, Integer>> byItem = new IdentityHashMap<>();
+
+    public void added(String playlist, AudioItem item) {
+        byItem.computeIfAbsent(item, k -> new HashMap<>(2)).merge(playlist, 1, Integer::sum);
+    }
+
+    public void removed(String playlist, AudioItem item) {
+        Map<String, Integer> counts = byItem.get(item);
+        if (counts == null) {
+            return;
+        }
+        counts.computeIfPresent(playlist, (k, n) -> n > 1 ? n - 1 : null);
+        if (counts.isEmpty()) {
+            byItem.remove(item);
+        }
+    }
+
+    /** Плейлистът е изтрит - items е съдържанието му. */
+    public void playlistDeleted(String playlist, Collection<AudioItem> items) {
+        for (AudioItem item : items) {
+            Map<String, Integer> counts = byItem.get(item);
+            if (counts != null) {
+                counts.remove(playlist);
+                if (counts.isEmpty()) {
+                    byItem.remove(item);
+                }
+            }
+        }
+    }
+
+    /** Имената на плейлистите, които съдържат обекта (само за четене). */
+    public Set<String> playlistsOf(AudioItem item) {
+        Map<String, Integer> counts = byItem.get(item);
+        return counts != null ? Collections.unmodifiableSet(counts.keySet()) : Collections.emptySet();
+    }
+
+    public void clear() {
+        byItem.clear();
+    }
+}
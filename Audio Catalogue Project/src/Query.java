@@ -0,0 +1,477 @@
+import java.util.*;
+
+/**
+ * Съставна заявка към каталога: условие (дърво от AND/OR/NOT над полетата
+ * на обектите), сортиране и ограничение на броя резултати.
+ *
+ * Текстов вид (ключовите думи са без значение на малки/главни букви и
+ * имат и български вариант - И, ИЛИ, НЕ, СОРТ, ЛИМИТ):
+ * <pre>
+ *   genre=поп AND year=1990..2000 AND NOT category=SONG SORT duration LIMIT 10
+ *   (author="Мария Илиева" OR author=Меди) AND duration&gt;3.5
+ *   title~любов
+ * </pre>
+ * Оператори: {@code =} (без значение на малки/главни букви), {@code ~}
+ * (съдържа), {@code a..b} (период, включително краищата) и {@code > >= < <=}
+ * за година и продължителност. Изпълнението е в {@link QueryPlanner}.
+ */
+public final class Query {
+
+    /** Поле, по което може да се филтрира. */
+    public enum Field {
+        TITLE("title", "заглавие"),
+        AUTHOR("author", "автор"),
+        GENRE("genre", "жанр"),
+        CATEGORY("category", "категория"),
+        YEAR("year", "година"),
+        DURATION("duration", "времетраене");
+
+        private final String name;
+        private final String bgName;
+
+        Field(String name, String bgName) {
+            this.name = name;
+            this.bgName = bgName;
+        }
+
+        boolean isNumeric() {
+            return this == YEAR || this == DURATION;
+        }
+
+        String text(AudioItem item) {
+            switch (this) {
+                case TITLE: return item.getTitle();
+                case AUTHOR: return item.getAuthor();
+                case GENRE: return item.getGenre();
+                default: return item.getCategory().name();
+            }
+        }
+
+        double number(AudioItem item) {
+            return this == YEAR ? item.getYear() : item.getDuration();
+        }
+
+        static Field parse(String word) {
+            for (Field field : values()) {
+                if (field.name.equalsIgnoreCase(word) || field.bgName.equalsIgnoreCase(word)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    public final Node where;
+    public final SortedViews.Order orderBy;
+    public final int limit;
+
+    public Query(Node where, SortedViews.Order orderBy, int limit) {
+        this.where = where;
+        this.orderBy = orderBy;
+        this.limit = limit;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(where != null ? where.toString() : "*");
+        if (orderBy != null) {
+            sb.append(" SORT ").append(orderBy.name().toLowerCase());
+        }
+        if (limit != Integer.MAX_VALUE) {
+            sb.append(" LIMIT ").append(limit);
+        }
+        return sb.toString();
+    }
+
+    // ==================== УСЛОВИЯ ====================
+
+    /** Възел от дървото на условието. */
+    public abstract static class Node {
+        public abstract boolean test(AudioItem item);
+    }
+
+    /** Поле = стойност; текстът се сравнява без значение на малки/главни букви. */
+    public static final class Eq extends Node {
+        public final Field field;
+        public final String value;
+        private final String folded;
+        private final AudioCategory category;
+        private final double number;
+
+        public Eq(Field field, String value) {
+            this.field = field;
+            this.value = value;
+            this.folded = TitleIndex.fold(value);
+            this.category = field == Field.CATEGORY ? parseCategory(value) : null;
+            this.number = field.isNumeric() ? Double.parseDouble(value) : Double.NaN;
+        }
+
+        public AudioCategory category() {
+            return category;
+        }
+
+        @Override
+        public boolean test(AudioItem item) {
+            switch (field) {
+                case CATEGORY: return item.getCategory() == category;
+                case YEAR:
+                case DURATION: return field.number(item) == number;
+                default: return TitleIndex.fold(field.text(item)).equals(folded);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return field + "=" + quote(value);
+        }
+    }
+
+    /** Поле съдържа текст (без значение на малки/главни букви). */
+    public static final class Contains extends Node {
+        public final Field field;
+        public final String text;
+        private final String lowered;
+
+        public Contains(Field field, String text) {
+            this.field = field;
+            this.text = text;
+            this.lowered = text.toLowerCase();
+        }
+
+        @Override
+        public boolean test(AudioItem item) {
+            return field.text(item).toLowerCase().contains(lowered);
+        }
+
+        @Override
+        public String toString() {
+            return field + "~" + quote(text);
+        }
+    }
+
+    /** from &lt;= поле &lt;= to за година или продължителност. */
+    public static final class Range extends Node {
+        public final Field field;
+        public final double from;
+        public final double to;
+        private final String text;
+
+        public Range(Field field, double from, double to) {
+            this(field, from, to, field + "=" + format(from) + ".." + format(to));
+        }
+
+        /** text е видът на условието в заявката, напр. "duration>3.5". */
+        Range(Field field, double from, double to, String text) {
+            this.field = field;
+            this.from = from;
+            this.to = to;
+            this.text = text;
+        }
+
+        @Override
+        public boolean test(AudioItem item) {
+            double value = field.number(item);
+            return value >= from && value <= to;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    public static final class And extends Node {
+        public final List<Node> children;
+
+        public And(List<Node> children) {
+            this.children = Collections.unmodifiableList(new ArrayList<>(children));
+        }
+
+        @Override
+        public boolean test(AudioItem item) {
+            for (Node child : children) {
+                if (!child.test(item)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return join(children, " AND ");
+        }
+    }
+
+    public static final class Or extends Node {
+        public final List<Node> children;
+
+        public Or(List<Node> children) {
+            this.children = Collections.unmodifiableList(new ArrayList<>(children));
+        }
+
+        @Override
+        public boolean test(AudioItem item) {
+            for (Node child : children) {
+                if (child.test(item)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return join(children, " OR ");
+        }
+    }
+
+    public static final class Not extends Node {
+        public final Node child;
+
+        public Not(Node child) {
+            this.child = child;
+        }
+
+        @Override
+        public boolean test(AudioItem item) {
+            return !child.test(item);
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + child;
+        }
+    }
+
+    private static String join(List<Node> children, String separator) {
+        StringJoiner joiner = new StringJoiner(separator, "(", ")");
+        for (Node child : children) {
+            joiner.add(child.toString());
+        }
+        return joiner.toString();
+    }
+
+    private static String quote(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isWhitespace(c) || "()=~<>\"".indexOf(c) >= 0) {
+                return "\"" + value + "\"";
+            }
+        }
+        return value.isEmpty() ? "\"\"" : value;
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value)
+            ? String.valueOf((long) value)
+            : String.valueOf(value);
+    }
+
+    private static AudioCategory parseCategory(String value) {
+        for (AudioCategory category : AudioCategory.values()) {
+            if (category.name().equalsIgnoreCase(value) || category.getBgName().equalsIgnoreCase(value)) {
+                return category;
+            }
+        }
+        throw new IllegalArgumentException("Непозната категория: " + value);
+    }
+
+    // ==================== ПАРСЕР ====================
+
+    /**
+     * Разбира текстов вид на заявка (виж описанието на класа).
+     * Празен текст означава всички обекти.
+     *
+     * @throws IllegalArgumentException при синтактична грешка
+     */
+    public static Query parse(String text) {
+        return new Parser(text).parse();
+    }
+
+    private static final class Parser {
+        private final List<String> tokens = new ArrayList<>();
+        private int pos = 0;
+
+        Parser(String text) {
+            tokenize(text);
+        }
+
+        Query parse() {
+            Node where = null;
+            if (!atEnd() && !isKeyword(peek(), "SORT", "СОРТ") && !isKeyword(peek(), "LIMIT", "ЛИМИТ")) {
+                where = parseOr();
+            }
+            SortedViews.Order orderBy = null;
+            int limit = Integer.MAX_VALUE;
+            if (!atEnd() && isKeyword(peek(), "SORT", "СОРТ")) {
+                pos++;
+                String criteria = next("критерий за сортиране");
+                orderBy = SortedViews.Order.parse(criteria);
+                if (orderBy == null) {
+                    throw new IllegalArgumentException("Невалиден критерий за сортиране: " + criteria);
+                }
+            }
+            if (!atEnd() && isKeyword(peek(), "LIMIT", "ЛИМИТ")) {
+                pos++;
+                String value = next("число след LIMIT");
+                try {
+                    limit = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    limit = -1;
+                }
+                if (limit < 1) {
+                    throw new IllegalArgumentException("Невалиден LIMIT: " + value);
+                }
+            }
+            if (!atEnd()) {
+                throw new IllegalArgumentException("Неочаквано '" + peek() + "'");
+            }
+            return new Query(where, orderBy, limit);
+        }
+
+        private Node parseOr() {
+            List<Node> children = new ArrayList<>();
+            children.add(parseAnd());
+            while (!atEnd() && isKeyword(peek(), "OR", "ИЛИ")) {
+                pos++;
+                children.add(parseAnd());
+            }
+            return children.size() == 1 ? children.get(0) : new Or(children);
+        }
+
+        private Node parseAnd() {
+            List<Node> children = new ArrayList<>();
+            children.add(parseUnary());
+            while (!atEnd() && isKeyword(peek(), "AND", "И")) {
+                pos++;
+                children.add(parseUnary());
+            }
+            return children.size() == 1 ? children.get(0) : new And(children);
+        }
+
+        private Node parseUnary() {
+            String token = next("условие");
+            if (isKeyword(token, "NOT", "НЕ")) {
+                return new Not(parseUnary());
+            }
+            if (token.equals("(")) {
+                Node inner = parseOr();
+                expect(")");
+                return inner;
+            }
+            Field field = Field.parse(token);
+            if (field == null) {
+                throw new IllegalArgumentException("Непознато поле: " + token);
+            }
+            String op = next("оператор след " + token);
+            String value = next("стойност след " + token + op);
+            try {
+                return condition(field, op, value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Очаква се число за " + field + ": " + value);
+            }
+        }
+
+        private Node condition(Field field, String op, String value) {
+            if (op.equals("~")) {
+                if (field.isNumeric() || field == Field.CATEGORY) {
+                    throw new IllegalArgumentException("~ е само за title, author и genre");
+                }
+                return new Contains(field, value);
+            }
+            if (!op.equals("=") && !field.isNumeric()) {
+                throw new IllegalArgumentException(op + " е само за year и duration");
+            }
+            // За годината "> 1990" е същото като ">= 1991"
+            boolean year = field == Field.YEAR;
+            switch (op) {
+                case "=":
+                    int dots = value.indexOf("..");
+                    if (dots < 0) {
+                        return new Eq(field, value);
+                    }
+                    if (!field.isNumeric()) {
+                        throw new IllegalArgumentException(".. е само за year и duration");
+                    }
+                    return new Range(field, Double.parseDouble(value.substring(0, dots)),
+                            Double.parseDouble(value.substring(dots + 2)));
+                case ">=":
+                    return new Range(field, Double.parseDouble(value), Double.POSITIVE_INFINITY, field + op + value);
+                case ">":
+                    double above = Double.parseDouble(value);
+                    return new Range(field, year ? Math.floor(above) + 1 : Math.nextUp(above),
+                            Double.POSITIVE_INFINITY, field + op + value);
+                case "<=":
+                    return new Range(field, Double.NEGATIVE_INFINITY, Double.parseDouble(value), field + op + value);
+                case "<":
+                    double below = Double.parseDouble(value);
+                    return new Range(field, Double.NEGATIVE_INFINITY,
+                            year ? Math.ceil(below) - 1 : Math.nextDown(below), field + op + value);
+                default:
+                    throw new IllegalArgumentException("Непознат оператор: " + op);
+            }
+        }
+
+        private void tokenize(String text) {
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '(' || c == ')' || c == '=' || c == '~') {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else if (c == '<' || c == '>') {
+                    boolean orEqual = i + 1 < text.length() && text.charAt(i + 1) == '=';
+                    tokens.add(orEqual ? c + "=" : String.valueOf(c));
+                    i += orEqual ? 2 : 1;
+                } else if (c == '"') {
+                    int end = text.indexOf('"', i + 1);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Незатворени кавички");
+                    }
+                    tokens.add(text.substring(i + 1, end));
+                    i = end + 1;
+                } else {
+                    int start = i;
+                    while (i < text.length() && !Character.isWhitespace(text.charAt(i))
+                            && "()=~<>\"".indexOf(text.charAt(i)) < 0) {
+                        i++;
+                    }
+                    tokens.add(text.substring(start, i));
+                }
+            }
+        }
+
+        private boolean atEnd() {
+            return pos >= tokens.size();
+        }
+
+        private String peek() {
+            return tokens.get(pos);
+        }
+
+        private String next(String expected) {
+            if (atEnd()) {
+                throw new IllegalArgumentException("Очаква се " + expected);
+            }
+            return tokens.get(pos++);
+        }
+
+        private void expect(String token) {
+            if (!next("'" + token + "'").equals(token)) {
+                throw new IllegalArgumentException("Очаква се '" + token + "'");
+            }
+        }
+
+        private static boolean isKeyword(String token, String english, String bulgarian) {
+            return token.equalsIgnoreCase(english) || token.equalsIgnoreCase(bulgarian);
+        }
+    }
+}
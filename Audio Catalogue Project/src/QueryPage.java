@@ -0,0 +1,214 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.IntSupplier;
+
+/**
+ * Една страница от резултатите на заявка.
+ *
+ * Страниците се избират с курсор, а не с отместване: {@link #nextToken}
+ * кодира ключа за сортиране и seq на последния върнат обект, и следващата
+ * страница започва от първия обект след него - индексът се обхожда от
+ * курсора нататък, без да се събират всички резултати. Така добавяния и изтривания
+ * между две страници не водят до пропуснати или повторени обекти (освен
+ * при плейлистите, чийто ред е по позиция).
+ *
+ * Страницата съдържа само обекти - форматирането им за конзолата става при
+ * извеждане (виж {@link #print()}), а не при изпълнение на заявката.
+ */
+public final class QueryPage {
+    /** Ред на добавяне в каталога - редът на търсенето и филтрите. */
+    public static final Comparator<AudioItem> SEQ_ORDER = Comparator.comparingLong(item -> item.seq);
+
+    /** Резултати по seq, които могат да се обходят от курсор нататък. */
+    @FunctionalInterface
+    public interface SeqResults {
+        /** До max обекта със seq > afterSeq, по seq. */
+        List<AudioItem> after(long afterSeq, int max);
+    }
+
+    private static final String SEQ = "SEQ";
+    private static final String POSITION = "POS";
+
+    public final List<AudioItem> items;
+    public final int total;
+    public final String nextToken;
+
+    private QueryPage(List<AudioItem> items, int total, String nextToken) {
+        this.items = Collections.unmodifiableList(items);
+        this.total = total;
+        this.nextToken = nextToken;
+    }
+
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+
+    /** Извежда обектите на страницата, по един на ред. */
+    public void print() {
+        for (AudioItem item : items) {
+            System.out.println(item);
+        }
+    }
+
+    // ==================== СТРАНИЦИ ====================
+
+    /**
+     * Страница от списък, подреден по {@link #SEQ_ORDER} (резултатите от
+     * търсене и филтри). Началото се намира с двоично търсене.
+     */
+    public static QueryPage bySeq(List<AudioItem> items, String token, int limit) {
+        int from = 0;
+        if (token != null) {
+            long seq = Long.parseLong(decode(token, SEQ)[1]);
+            from = firstAfter(items, item -> Long.compare(item.seq, seq));
+        }
+        return slice(items, from, limit, SEQ);
+    }
+
+    /**
+     * Страница от резултати, които се обхождат от курсора нататък (напр.
+     * SearchIndex.searchAfter) - събират се само обектите на страницата.
+     * count се вика само за първата страница; след това броят пътува в
+     * курсора, т.е. total е броят към първата страница.
+     */
+    public static QueryPage bySeq(SeqResults results, IntSupplier count, String token, int limit) {
+        long afterSeq = Long.MIN_VALUE;
+        int total;
+        if (token == null) {
+            total = count.getAsInt();
+        } else {
+            String[] cursor = decode(token, SEQ);
+            afterSeq = Long.parseLong(cursor[1]);
+            total = cursor.length > 2 && !cursor[2].isEmpty() ? Integer.parseInt(cursor[2]) : count.getAsInt();
+        }
+        // Един обект повече показва дали има следваща страница
+        List<AudioItem> page = new ArrayList<>(results.after(afterSeq, (int) Math.min(Integer.MAX_VALUE, limit + 1L)));
+        String next = null;
+        if (page.size() > limit) {
+            page.subList(limit, page.size()).clear();
+            next = token(SEQ, page.get(limit - 1).seq + "|" + total);
+        }
+        return new QueryPage(page, total, next);
+    }
+
+    /** Страница от списък, подреден по критерия order (seq при равенство). */
+    public static QueryPage sorted(List<AudioItem> items, SortedViews.Order order, String token, int limit) {
+        int from = 0;
+        if (token != null) {
+            AudioItem probe = probe(order, decode(token, order.name()));
+            from = firstAfter(items, item -> order.comparator().compare(item, probe));
+        }
+        return slice(items, from, limit, order.name());
+    }
+
+    /**
+     * Страница от поддържан сортиран изглед (SortedViews). Обхождат се само
+     * обектите на страницата - изгледът не се копира.
+     */
+    public static QueryPage sorted(NavigableSet<AudioItem> view, SortedViews.Order order, String token, int limit) {
+        Iterator<AudioItem> it = token == null
+                ? view.iterator()
+                : view.tailSet(probe(order, decode(token, order.name())), false).iterator();
+        List<AudioItem> page = new ArrayList<>(Math.min(limit, view.size()));
+        while (page.size() < limit && it.hasNext()) {
+            page.add(it.next());
+        }
+        String next = it.hasNext() && !page.isEmpty() ? encode(order.name(), page.get(page.size() - 1)) : null;
+        return new QueryPage(page, view.size(), next);
+    }
+
+    /** Страница по позиция - за плейлистите, които нямат ключ за подредба. */
+    public static QueryPage byPosition(List<AudioItem> items, String token, int limit) {
+        int from = token == null ? 0 : Integer.parseInt(decode(token, POSITION)[1]);
+        if (from < 0) {
+            throw new IllegalArgumentException("Невалиден курсор: " + token);
+        }
+        int to = (int) Math.min(items.size(), (long) from + limit);
+        List<AudioItem> page = from < to ? new ArrayList<>(items.subList(from, to)) : new ArrayList<>();
+        String next = to < items.size() ? token(POSITION, String.valueOf(to)) : null;
+        return new QueryPage(page, items.size(), next);
+    }
+
+    private static QueryPage slice(List<AudioItem> items, int from, int limit, String kind) {
+        int to = (int) Math.min(items.size(), (long) from + limit);
+        List<AudioItem> page = from < to ? new ArrayList<>(items.subList(from, to)) : new ArrayList<>();
+        String next = to < items.size() && !page.isEmpty() ? encode(kind, page.get(page.size() - 1)) : null;
+        return new QueryPage(page, items.size(), next);
+    }
+
+    /** Индексът на първия елемент, за който compareToCursor > 0. */
+    private static int firstAfter(List<AudioItem> items, java.util.function.ToIntFunction<AudioItem> compareToCursor) {
+        int low = 0;
+        int high = items.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareToCursor.applyAsInt(items.get(mid)) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // ==================== КУРСОР ====================
+
+    // Курсорът е "вид|seq|ключ" в base64url - непрозрачен за клиента
+
+    private static String encode(String kind, AudioItem last) {
+        String key;
+        switch (kind) {
+            case "TITLE": key = last.getTitle(); break;
+            case "AUTHOR": key = last.getAuthor(); break;
+            case "YEAR": key = String.valueOf(last.getYear()); break;
+            case "DURATION": key = String.valueOf(last.getDuration()); break;
+            default: key = ""; break;
+        }
+        return token(kind, last.seq + "|" + key);
+    }
+
+    private static String token(String kind, String value) {
+        byte[] bytes = (kind + "|" + value).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /** Полетата на курсора; IllegalArgumentException, ако не е за този вид заявка. */
+    private static String[] decode(String token, String kind) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|", 3);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Невалиден курсор: " + token);
+        }
+        if (parts.length < 2 || !parts[0].equals(kind)) {
+            throw new IllegalArgumentException("Курсорът не е за тази заявка: " + token);
+        }
+        return parts;
+    }
+
+    /** Обект само за сравнение - има ключа и seq на последния обект от страницата. */
+    private static AudioItem probe(SortedViews.Order order, String[] cursor) {
+        String key = cursor.length > 2 ? cursor[2] : "";
+        AudioItem probe;
+        try {
+            switch (order) {
+                case TITLE:
+                    probe = new Song(key, "", "", 2000, 1, "");
+                    break;
+                case AUTHOR:
+                    probe = new Song("?", key, "", 2000, 1, "");
+                    break;
+                case YEAR:
+                    probe = new Song("?", "", "", Integer.parseInt(key), 1, "");
+                    break;
+                default:
+                    probe = new Song("?", "", "", 2000, Double.parseDouble(key), "");
+                    break;
+            }
+            probe.seq = Long.parseLong(cursor[1]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Невалиден курсор за " + order.name());
+        }
+        return probe;
+    }
+}
@@ -0,0 +1,445 @@
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Изпълнява съставни заявки ({@link Query}) върху индексите на каталога.
+ *
+ * Планът се избира по оценка на прегледаните редове:
+ *  - условие по поле с индекс (категория, жанр, автор, заглавие, година,
+ *    ~ по текст) се чете от индекса, без обхождане на каталога;
+ *  - при AND се чете само най-селективният индекс (с най-малко обекти), а
+ *    останалите условия се проверяват върху неговите редове - това е по-
+ *    евтино от пресичане, защото втори индекс би прочел поне толкова редове;
+ *  - OR използва индекси само ако всяко от условията има индекс - тогава
+ *    резултатите се обединяват; иначе, както и при NOT и продължителност,
+ *    се обхожда целият каталог;
+ *  - SORT с LIMIT може да обходи поддържания сортиран изглед (SortedViews)
+ *    и да спре след LIMIT съвпадения, ако това е по-евтино от индекса и
+ *    сортиране.
+ *
+ * {@link Result#explain()} показва избрания план и колко реда са прегледани.
+ */
+public class QueryPlanner {
+    private final List<AudioItem> catalog;
+    private final TitleIndex titleIndex;
+    private final AttributeIndex attributeIndex;
+    private final SearchIndex searchIndex;
+    private final SortedViews sortedViews;
+
+    /** catalog трябва да е в реда на добавяне (по seq), както в CatalogManager. */
+    public QueryPlanner(List<AudioItem> catalog, TitleIndex titleIndex, AttributeIndex attributeIndex,
+                        SearchIndex searchIndex, SortedViews sortedViews) {
+        this.catalog = catalog;
+        this.titleIndex = titleIndex;
+        this.attributeIndex = attributeIndex;
+        this.searchIndex = searchIndex;
+        this.sortedViews = sortedViews;
+    }
+
+    /** Резултат от заявка: обектите, планът и броят прегледани редове. */
+    public static final class Result {
+        public final Query query;
+        public final List<AudioItem> items;
+        public final long rowsScanned;
+        public final long nanos;
+        private final Plan plan;
+        private final int catalogSize;
+
+        private Result(Query query, List<AudioItem> items, Plan plan, long rowsScanned,
+                       long nanos, int catalogSize) {
+            this.query = query;
+            this.items = Collections.unmodifiableList(items);
+            this.plan = plan;
+            this.rowsScanned = rowsScanned;
+            this.nanos = nanos;
+            this.catalogSize = catalogSize;
+        }
+
+        /** Планът като дърво (отгоре е последната стъпка) и статистика на изпълнението. */
+        public String explain() {
+            StringBuilder sb = new StringBuilder("📋 План за: ").append(query).append('\n');
+            plan.describe(sb, 1);
+            sb.append(String.format("📊 Прегледани редове: %d от %d, резултати: %d, %.2f ms",
+                    rowsScanned, catalogSize, items.size(), nanos / 1e6));
+            return sb.toString();
+        }
+    }
+
+    public Result execute(Query query) {
+        long start = System.nanoTime();
+        Plan plan = plan(query);
+        long[] scanned = new long[1];
+        List<AudioItem> items = plan.run(scanned);
+        return new Result(query, items, plan, scanned[0], System.nanoTime() - start, catalog.size());
+    }
+
+    // ==================== ПЛАНИРАНЕ ====================
+
+    Plan plan(Query query) {
+        Plan access = query.where != null ? indexAccess(query.where) : null;
+        boolean limited = query.limit != Integer.MAX_VALUE;
+
+        if (query.orderBy == null) {
+            // Без сортиране резултатите са в реда на каталога и обхождането
+            // може да спре след LIMIT съвпадения
+            Plan base = access != null ? access : new FullScan(query.where, query.limit);
+            return limited && access != null ? new Limit(base, query.limit) : base;
+        }
+
+        // Сортиран изглед: при очаквани m съвпадения от n реда, за LIMIT k се
+        // обхождат около k * n / m реда. Без индекс m не е известно и се
+        // приема, че всички редове съвпадат.
+        if (limited) {
+            long matches = Math.max(1, access != null ? access.estimate : catalog.size());
+            long sortedCost = Math.min(catalog.size(), (long) query.limit * catalog.size() / matches);
+            long indexCost = access != null ? access.cost : catalog.size();
+            if (sortedCost < indexCost) {
+                return new SortedScan(query.orderBy, query.where, query.limit, sortedCost);
+            }
+        }
+        Plan base = access != null ? access : new FullScan(query.where, Integer.MAX_VALUE);
+        return new Sort(base, query.orderBy, query.limit);
+    }
+
+    /** План, който чете само от индекси; null, ако условието няма подходящ индекс. */
+    private Plan indexAccess(Query.Node node) {
+        if (node instanceof Query.Eq) {
+            return eqAccess((Query.Eq) node);
+        }
+        if (node instanceof Query.Range) {
+            Query.Range range = (Query.Range) node;
+            if (range.field != Query.Field.YEAR) {
+                return null;
+            }
+            int from = (int) Math.max(Integer.MIN_VALUE, Math.ceil(range.from));
+            int to = (int) Math.min(Integer.MAX_VALUE, Math.floor(range.to));
+            return new IndexLookup("Индекс по година " + range,
+                    attributeIndex.countYearRange(from, to), () -> attributeIndex.byYearRange(from, to));
+        }
+        if (node instanceof Query.Contains) {
+            // SearchIndex търси в заглавие, автор и жанр - полето се проверява след това
+            Query.Contains contains = (Query.Contains) node;
+            Plan lookup = new IndexLookup("Текстов индекс ~\"" + contains.text + "\"",
+                    searchIndex.estimate(contains.text), () -> searchIndex.search(contains.text));
+            return new Filter(lookup, contains);
+        }
+        if (node instanceof Query.And) {
+            Query.And and = (Query.And) node;
+            Plan best = null;
+            Query.Node bestNode = null;
+            for (Query.Node child : and.children) {
+                Plan access = indexAccess(child);
+                if (access != null && (best == null || access.cost < best.cost)) {
+                    best = access;
+                    bestNode = child;
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+            List<Query.Node> rest = new ArrayList<>(and.children);
+            rest.remove(bestNode);
+            if (rest.isEmpty()) {
+                return best;
+            }
+            return new Filter(best, rest.size() == 1 ? rest.get(0) : new Query.And(rest));
+        }
+        if (node instanceof Query.Or) {
+            List<Plan> parts = new ArrayList<>();
+            for (Query.Node child : ((Query.Or) node).children) {
+                Plan access = indexAccess(child);
+                if (access == null) {
+                    return null;
+                }
+                parts.add(access);
+            }
+            Plan union = new Union(parts);
+            return union.cost < catalog.size() ? union : null;
+        }
+        return null; // NOT - обратното на индекс е почти целият каталог
+    }
+
+    private Plan eqAccess(Query.Eq eq) {
+        switch (eq.field) {
+            case CATEGORY:
+                return new IndexLookup("Индекс по категория " + eq,
+                        attributeIndex.countCategory(eq.category()), () -> attributeIndex.byCategory(eq.category()));
+            case GENRE:
+                return new IndexLookup("Индекс по жанр " + eq,
+                        attributeIndex.countGenre(eq.value), () -> attributeIndex.byGenre(eq.value));
+            case AUTHOR:
+                return new IndexLookup("Индекс по автор " + eq,
+                        attributeIndex.countAuthor(eq.value), () -> attributeIndex.byAuthor(eq.value));
+            case TITLE:
+                return new IndexLookup("Индекс по заглавие " + eq,
+                        titleIndex.count(eq.value), () -> titleIndex.all(eq.value));
+            case YEAR:
+                double year = Double.parseDouble(eq.value);
+                if (year != Math.rint(year)) {
+                    return new IndexLookup("Година " + eq + " (не е цяло число)", 0, ArrayList::new);
+                }
+                return new IndexLookup("Индекс по година " + eq,
+                        attributeIndex.countYearRange((int) year, (int) year),
+                        () -> attributeIndex.byYear((int) year));
+            default:
+                return null; // продължителността няма индекс
+        }
+    }
+
+    // ==================== СТЪПКИ НА ПЛАНА ====================
+
+    /**
+     * Стъпка на плана. estimate е очакваният брой върнати редове (горна
+     * граница), cost - очакваният брой прегледани редове.
+     */
+    abstract static class Plan {
+        final long estimate;
+        final long cost;
+
+        Plan(long estimate, long cost) {
+            this.estimate = estimate;
+            this.cost = cost;
+        }
+
+        /** Изпълнява стъпката; scanned[0] се увеличава с прегледаните редове. */
+        abstract List<AudioItem> run(long[] scanned);
+
+        abstract String label();
+
+        List<Plan> inputs() {
+            return Collections.emptyList();
+        }
+
+        void describe(StringBuilder sb, int depth) {
+            sb.append("  ".repeat(depth)).append("→ ").append(label())
+              .append(" (оценка: ~").append(cost).append(" реда)\n");
+            for (Plan input : inputs()) {
+                input.describe(sb, depth + 1);
+            }
+        }
+    }
+
+    /** Четене на готов списък от индекс (в реда на каталога). */
+    private static final class IndexLookup extends Plan {
+        private final String label;
+        private final Supplier<List<AudioItem>> lookup;
+
+        IndexLookup(String label, long estimate, Supplier<List<AudioItem>> lookup) {
+            super(estimate, estimate);
+            this.label = label;
+            this.lookup = lookup;
+        }
+
+        @Override
+        List<AudioItem> run(long[] scanned) {
+            List<AudioItem> items = lookup.get();
+            scanned[0] += items.size();
+            return items;
+        }
+
+        @Override
+        String label() {
+            return label;
+        }
+    }
+
+    /** Проверка на останалите условия върху редовете от входа. */
+    private static final class Filter extends Plan {
+        private final Plan input;
+        private final Query.Node predicate;
+
+        Filter(Plan input, Query.Node predicate) {
+            super(input.estimate, input.cost);
+            this.input = input;
+            this.predicate = predicate;
+        }
+
+        @Override
+        List<AudioItem> run(long[] scanned) {
+            List<AudioItem> results = new ArrayList<>();
+            for (AudioItem item : input.run(scanned)) {
+                if (predicate.test(item)) {
+                    results.add(item);
+                }
+            }
+            return results;
+        }
+
+        @Override
+        String label() {
+            return "Филтър " + predicate;
+        }
+
+        @Override
+        List<Plan> inputs() {
+            return Collections.singletonList(input);
+        }
+    }
+
+    /** Обединение на резултатите от няколко индекса (OR), в реда на каталога. */
+    private static final class Union extends Plan {
+        private final List<Plan> parts;
+
+        Union(List<Plan> parts) {
+            super(parts.stream().mapToLong(p -> p.estimate).sum(), parts.stream().mapToLong(p -> p.cost).sum());
+            this.parts = parts;
+        }
+
+        @Override
+        List<AudioItem> run(long[] scanned) {
+            Set<AudioItem> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<AudioItem> results = new ArrayList<>();
+            for (Plan part : parts) {
+                for (AudioItem item : part.run(scanned)) {
+                    if (seen.add(item)) {
+                        results.add(item);
+                    }
+                }
+            }
+            results.sort(QueryPage.SEQ_ORDER);
+            return results;
+        }
+
+        @Override
+        String label() {
+            return "Обединение (OR) на " + parts.size() + " индекса";
+        }
+
+        @Override
+        List<Plan> inputs() {
+            return parts;
+        }
+    }
+
+    /** Обхождане на целия каталог, със спиране след limit съвпадения. */
+    private final class FullScan extends Plan {
+        private final Query.Node predicate;
+        private final int limit;
+
+        FullScan(Query.Node predicate, int limit) {
+            super(catalog.size(), catalog.size());
+            this.predicate = predicate;
+            this.limit = limit;
+        }
+
+        @Override
+        List<AudioItem> run(long[] scanned) {
+            List<AudioItem> results = new ArrayList<>();
+            for (AudioItem item : catalog) {
+                if (results.size() >= limit) {
+                    break;
+                }
+                scanned[0]++;
+                if (predicate == null || predicate.test(item)) {
+                    results.add(item);
+                }
+            }
+            return results;
+        }
+
+        @Override
+        String label() {
+            return "Обхождане на каталога" + (predicate != null ? ", филтър " + predicate : "")
+                + (limit != Integer.MAX_VALUE ? ", до " + limit + " съвпадения" : "");
+        }
+    }
+
+    /** Обхождане на сортиран изглед със спиране след limit съвпадения. */
+    private final class SortedScan extends Plan {
+        private final SortedViews.Order order;
+        private final Query.Node predicate;
+        private final int limit;
+
+        SortedScan(SortedViews.Order order, Query.Node predicate, int limit, long cost) {
+            super(limit, cost);
+            this.order = order;
+            this.predicate = predicate;
+            this.limit = limit;
+        }
+
+        @Override
+        List<AudioItem> run(long[] scanned) {
+            List<AudioItem> results = new ArrayList<>();
+            for (AudioItem item : sortedViews.view(order, catalog)) {
+                if (results.size() >= limit) {
+                    break;
+                }
+                scanned[0]++;
+                if (predicate == null || predicate.test(item)) {
+                    results.add(item);
+                }
+            }
+            return results;
+        }
+
+        @Override
+        String label() {
+            return "Сортиран изглед по " + order.getLabel()
+                + (predicate != null ? ", филтър " + predicate : "") + ", до " + limit + " съвпадения";
+        }
+    }
+
+    /** Сортиране на входа и взимане на първите limit. */
+    private static final class Sort extends Plan {
+        private final Plan input;
+        private final SortedViews.Order order;
+        private final int limit;
+
+        Sort(Plan input, SortedViews.Order order, int limit) {
+            super(Math.min(input.estimate, limit), input.cost);
+            this.input = input;
+            this.order = order;
+            this.limit = limit;
+        }
+
+        @Override
+        List<AudioItem> run(long[] scanned) {
+            List<AudioItem> results = input.run(scanned);
+            if (results.size() > limit) {
+                // Само първите limit - ограничена купчина вместо пълно сортиране
+                return TopK.select(results, order.comparator(), limit, null);
+            }
+            results = new ArrayList<>(results);
+            results.sort(order.comparator());
+            return results;
+        }
+
+        @Override
+        String label() {
+            return "Сортиране по " + order.getLabel() + (limit != Integer.MAX_VALUE ? ", първите " + limit : "");
+        }
+
+        @Override
+        List<Plan> inputs() {
+            return Collections.singletonList(input);
+        }
+    }
+
+    /** Първите limit реда от входа. */
+    private static final class Limit extends Plan {
+        private final Plan input;
+        private final int limit;
+
+        Limit(Plan input, int limit) {
+            super(Math.min(input.estimate, limit), input.cost);
+            this.input = input;
+            this.limit = limit;
+        }
+
+        @Override
+        List<AudioItem> run(long[] scanned) {
+            List<AudioItem> results = input.run(scanned);
+            return results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+        }
+
+        @Override
+        String label() {
+            return "Първите " + limit;
+        }
+
+        @Override
+        List<Plan> inputs() {
+            return Collections.singletonList(input);
+        }
+    }
+}
@@ -0,0 +1,330 @@
+import java.util.*;
+
+/**
+ * Обърнат индекс за свободно търсене по заглавие, автор и жанр.
+ *
+ * Всеки обект е ред с номер; полетата му в малки букви се пазят като един
+ * низ (разделени с '\0'). За всяка триграма (подниз от 3 символа в едно
+ * поле) се пази сортиран масив от номерата на редовете, които я съдържат -
+ * по 4 байта на срещане, без обекти за всеки запис. Заявка от 3 символа се
+ * отговаря направо от масива на триграмата. По-дълга заявка взима най-късия
+ * масив сред своите триграми и проверява само тези кандидати с contains.
+ * Заявка под 3 символа обхожда всички редове.
+ *
+ * Редовете са в реда на добавяне (по seq), така че резултатите не се
+ * сортират. Изтритият ред само се отбелязва; когато изтритите станат
+ * повече от живите, индексът се изгражда наново без тях.
+ *
+ * {@link #copy()} дава копие само за четене (за друга нишка), което
+ * споделя масивите: по-късните add пишат само след края на копието, а
+ * изтриването отбелязва реда в собствения масив с обекти.
+ *
+ * Резултатът съвпада с досегашното
+ * title/author/genre.toLowerCase().contains(query.toLowerCase()).
+ */
+public class SearchIndex {
+    private static final int GRAM = 3;
+    private static final char SEPARATOR = '\0';
+    private static final int MIN_COMPACT = 1024;
+
+    /** Номерата на редовете с дадена триграма, във възходящ ред. */
+    private static final class Posting {
+        int[] rows = new int[4];
+        int size;
+
+        Posting copy() {
+            Posting copy = new Posting();
+            copy.rows = rows;
+            copy.size = size;
+            return copy;
+        }
+
+        void add(int row) {
+            // Триграма, която се повтаря в същия обект, се записва веднъж
+            if (size > 0 && rows[size - 1] == row) {
+                return;
+            }
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size + (size >> 1) + 1);
+            }
+            rows[size++] = row;
+        }
+    }
+
+    private final Map<Long, Posting> postings;
+    // По ред: обектът (null след изтриване), seq и полетата в малки букви
+    private AudioItem[] items = new AudioItem[16];
+    private long[] seqs = new long[16];
+    private String[] texts = new String[16];
+    private int rows;
+    private int live;
+    // Добавен е обект с по-малък seq от последния - редовете се пренареждат
+    // при следващата заявка или изтриване
+    private boolean unsorted;
+    // Копие от copy() - само за четене
+    private boolean readOnly;
+
+    public SearchIndex() {
+        this(new HashMap<>());
+    }
+
+    private SearchIndex(Map<Long, Posting> postings) {
+        this.postings = postings;
+    }
+
+    public void add(AudioItem item) {
+        checkWritable();
+        String text = item.getTitle().toLowerCase() + SEPARATOR
+            + item.getAuthor().toLowerCase() + SEPARATOR
+            + item.getGenre().toLowerCase();
+        if (rows > 0 && item.seq <= seqs[rows - 1]) {
+            unsorted = true;
+        }
+        addRow(item, text);
+    }
+
+    private void addRow(AudioItem item, String text) {
+        if (rows == items.length) {
+            int capacity = rows + (rows >> 1);
+            items = Arrays.copyOf(items, capacity);
+            seqs = Arrays.copyOf(seqs, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+        }
+        int row = rows++;
+        items[row] = item;
+        seqs[row] = item.seq;
+        texts[row] = text;
+        live++;
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            long key = gram(text, i);
+            if (key >= 0) {
+                postings.computeIfAbsent(key, k -> new Posting()).add(row);
+            }
+        }
+    }
+
+    public void remove(AudioItem item) {
+        checkWritable();
+        sortIfNeeded();
+        int row = rowOf(item);
+        if (row < 0) {
+            return;
+        }
+        // texts[row] остава - масивът може да е споделен с копие
+        items[row] = null;
+        live--;
+        int dead = rows - live;
+        if (dead >= MIN_COMPACT && dead > live) {
+            compact();
+        }
+    }
+
+    public void clear() {
+        checkWritable();
+        postings.clear();
+        items = new AudioItem[16];
+        seqs = new long[16];
+        texts = new String[16];
+        rows = 0;
+        live = 0;
+        unsorted = false;
+    }
+
+    /**
+     * Копие само за четене, което не се променя от по-късните промени на
+     * този индекс. Копира се само масивът с обектите и заглавките на
+     * масивите с редове - O(редове + триграми), без разделяне на текстове.
+     */
+    public SearchIndex copy() {
+        sortIfNeeded();
+        SearchIndex copy = new SearchIndex(new HashMap<>(postings.size() * 4 / 3 + 1));
+        postings.forEach((key, posting) -> copy.postings.put(key, posting.copy()));
+        copy.items = Arrays.copyOf(items, rows);
+        copy.seqs = seqs;
+        copy.texts = texts;
+        copy.rows = rows;
+        copy.live = live;
+        copy.readOnly = true;
+        return copy;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Копието на индекса е само за четене");
+        }
+    }
+
+    /**
+     * Връща обектите, в чието заглавие, автор или жанр се съдържа заявката,
+     * в реда на добавяне в каталога.
+     */
+    public List<AudioItem> search(String query) {
+        return searchAfter(query, Long.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * До max резултата със seq > afterSeq, в реда на добавяне - за страници
+     * (QueryPage). Обхождането започва от курсора (двоично търсене по seq)
+     * и спира при max резултата, вместо да се събират всички.
+     */
+    public List<AudioItem> searchAfter(String query, long afterSeq, int max) {
+        List<AudioItem> results = new ArrayList<>();
+        scan(query, afterSeq, max, results);
+        return results;
+    }
+
+    /** Броят резултати на search(query), без да се събират в списък. */
+    public int count(String query) {
+        return scan(query, Long.MIN_VALUE, Integer.MAX_VALUE, null);
+    }
+
+    /** Намира до max съвпадения след afterSeq; добавя ги в out, ако не е null. */
+    private int scan(String query, long afterSeq, int max, List<AudioItem> out) {
+        sortIfNeeded();
+        String q = query.toLowerCase();
+        if (q.indexOf(SEPARATOR) >= 0) {
+            return 0; // разделителят не се среща в нито едно поле
+        }
+        int found = 0;
+        if (q.length() < GRAM) {
+            for (int row = firstRowAfter(afterSeq); row < rows && found < max; row++) {
+                if (items[row] != null && texts[row].contains(q)) {
+                    if (out != null) {
+                        out.add(items[row]);
+                    }
+                    found++;
+                }
+            }
+            return found;
+        }
+        Posting posting = smallestPosting(q);
+        if (posting == null) {
+            return 0;
+        }
+        // Триграмата сама по себе си е съвпадение; по-дългата заявка се проверява
+        boolean verify = q.length() > GRAM;
+        for (int i = firstAfter(posting, afterSeq); i < posting.size && found < max; i++) {
+            int row = posting.rows[i];
+            if (items[row] != null && (!verify || texts[row].contains(q))) {
+                if (out != null) {
+                    out.add(items[row]);
+                }
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Горна граница за броя резултати на search(query) - размерът на
+     * масива с кандидати, без проверката им.
+     */
+    public int estimate(String query) {
+        String q = query.toLowerCase();
+        if (q.length() < GRAM) {
+            return live;
+        }
+        Posting posting = smallestPosting(q);
+        return posting == null ? 0 : Math.min(posting.size, live);
+    }
+
+    /** null, ако някоя триграма липсва - тогава няма съвпадения. */
+    private Posting smallestPosting(String q) {
+        Posting smallest = null;
+        for (int i = 0; i + GRAM <= q.length(); i++) {
+            Posting posting = postings.get(gram(q, i));
+            if (posting == null) {
+                return null;
+            }
+            if (smallest == null || posting.size < smallest.size) {
+                smallest = posting;
+            }
+        }
+        return smallest;
+    }
+
+    // ==================== РЕДОВЕ ====================
+
+    /** Редът на обекта (двоично търсене по seq) или -1. */
+    private int rowOf(AudioItem item) {
+        for (int row = firstRowAfter(item.seq - 1); row < rows && seqs[row] == item.seq; row++) {
+            if (items[row] == item) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /** Първият ред със seq > afterSeq. */
+    private int firstRowAfter(long afterSeq) {
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (seqs[mid] <= afterSeq) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Позицията в масива на първия ред със seq > afterSeq. */
+    private int firstAfter(Posting posting, long afterSeq) {
+        int low = 0;
+        int high = posting.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (seqs[posting.rows[mid]] <= afterSeq) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void sortIfNeeded() {
+        if (unsorted) {
+            compact();
+        }
+    }
+
+    /** Изгражда редовете и масивите наново - само живите обекти, по seq. */
+    private void compact() {
+        Integer[] order = new Integer[live];
+        for (int row = 0, n = 0; row < rows; row++) {
+            if (items[row] != null) {
+                order[n++] = row;
+            }
+        }
+        if (unsorted) {
+            Arrays.sort(order, Comparator.comparingLong(row -> seqs[row]));
+        }
+        AudioItem[] oldItems = items;
+        String[] oldTexts = texts;
+        int capacity = Math.max(16, live + (live >> 1));
+        items = new AudioItem[capacity];
+        seqs = new long[capacity];
+        texts = new String[capacity];
+        rows = 0;
+        live = 0;
+        unsorted = false;
+        postings.clear();
+        for (int row : order) {
+            addRow(oldItems[row], oldTexts[row]);
+        }
+    }
+
+    /** Трите символа от позиция i като число, или -1, ако пресичат поле. */
+    private static long gram(String s, int i) {
+        char a = s.charAt(i);
+        char b = s.charAt(i + 1);
+        char c = s.charAt(i + 2);
+        if (a == SEPARATOR || b == SEPARATOR || c == SEPARATOR) {
+            return -1;
+        }
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+}
@@ -0,0 +1,96 @@
+import java.util.*;
+
+/**
+ * Сортирани изгледи на каталога по заглавие, автор, година и
+ * продължителност.
+ *
+ * Изгледът за даден критерий се изгражда при първото поискване и след това
+ * се поддържа при всяко добавяне и изтриване (O(log n)), така че смяната на
+ * реда е само обхождане - без сортиране и без пренареждане на самия
+ * каталог. При равни стойности редът е по seq (редът на добавяне), както
+ * при стабилно сортиране.
+ */
+public class SortedViews {
+
+    /** Критерий за сортиране. */
+    public enum Order {
+        TITLE("заглавие (А-Я)", Comparator.comparing(AudioItem::getTitle)),
+        AUTHOR("автор (А-Я)", Comparator.comparing(AudioItem::getAuthor)),
+        YEAR("година (възходящо)", Comparator.comparingInt(AudioItem::getYear)),
+        DURATION("продължителност", Comparator.comparingDouble(AudioItem::getDuration));
+
+        private final String label;
+        private final Comparator<AudioItem> comparator;
+
+        Order(String label, Comparator<AudioItem> comparator) {
+            this.label = label;
+            this.comparator = comparator.thenComparingLong(item -> item.seq);
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public Comparator<AudioItem> comparator() {
+            return comparator;
+        }
+
+        /** Критерият по име (на английски или български); null, ако е невалиден. */
+        public static Order parse(String criteria) {
+            switch (criteria.toLowerCase()) {
+                case "title":
+                case "заглавие":
+                    return TITLE;
+                case "author":
+                case "автор":
+                    return AUTHOR;
+                case "year":
+                case "година":
+                    return YEAR;
+                case "duration":
+                case "времетраене":
+                    return DURATION;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private final Map<Order, TreeSet<AudioItem>> views = new EnumMap<>(Order.class);
+
+    /**
+     * Изгледът в дадения ред (само за четене). Ако още не е изграден, се
+     * изгражда от {@code all} - текущото съдържание на каталога.
+     */
+    public NavigableSet<AudioItem> view(Order order, Collection<AudioItem> all) {
+        TreeSet<AudioItem> view = views.get(order);
+        if (view == null) {
+            view = new TreeSet<>(order.comparator());
+            view.addAll(all);
+            views.put(order, view);
+        }
+        return Collections.unmodifiableNavigableSet(view);
+    }
+
+    /** Дали изгледът вече е изграден (иначе първото view струва O(n log n)). */
+    public boolean isBuilt(Order order) {
+        return views.containsKey(order);
+    }
+
+    /** Обектът трябва вече да има seq (виж CatalogManager.indexItem). */
+    public void add(AudioItem item) {
+        for (TreeSet<AudioItem> view : views.values()) {
+            view.add(item);
+        }
+    }
+
+    public void remove(AudioItem item) {
+        for (TreeSet<AudioItem> view : views.values()) {
+            view.remove(item);
+        }
+    }
+
+    public void clear() {
+        views.clear();
+    }
+}
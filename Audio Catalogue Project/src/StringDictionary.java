@@ -0,0 +1,29 @@
+import java.util.*;
+
+/**
+ * Речник на низове: всеки различен низ получава пореден номер (0, 1, 2...).
+ * Използва се за колоните с много повторения - автор, жанр, албум и т.н.
+ */
+public class StringDictionary {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    /** Номерът на низа; ако го няма - добавя го. */
+    public int idOf(String value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = values.size();
+            ids.put(value, id);
+            values.add(value);
+        }
+        return id;
+    }
+
+    public String get(int id) {
+        return values.get(id);
+    }
+
+    public int size() {
+        return values.size();
+    }
+}
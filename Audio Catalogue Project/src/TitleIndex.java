@@ -0,0 +1,77 @@
+import java.util.*;
+
+/**
+ * Индекс на каталога по заглавие, без значение на малки/главни букви.
+ *
+ * Ключът се получава със {@link #fold(String)}, който дава същия резултат
+ * като сравнението с equalsIgnoreCase, така че търсенето е O(1) вместо
+ * обхождане на целия каталог.
+ *
+ * Дублирани заглавия са позволени. За всяко заглавие се пазят всички
+ * обекти в реда на добавяне:
+ *  - {@link #first(String)} връща най-рано добавения обект;
+ *  - {@link #all(String)} връща всички обекти с това заглавие.
+ */
+public class TitleIndex {
+    private final Map<String, List<AudioItem>> byTitle = new HashMap<>();
+
+    public void add(AudioItem item) {
+        byTitle.computeIfAbsent(fold(item.getTitle()), k -> new ArrayList<>(1)).add(item);
+    }
+
+    public void remove(AudioItem item) {
+        String key = fold(item.getTitle());
+        List<AudioItem> items = byTitle.get(key);
+        if (items == null) {
+            return;
+        }
+        // Сравняваме по референция - два различни обекта може да имат еднакво заглавие
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i) == item) {
+                items.remove(i);
+                break;
+            }
+        }
+        if (items.isEmpty()) {
+            byTitle.remove(key);
+        }
+    }
+
+    public AudioItem first(String title) {
+        List<AudioItem> items = byTitle.get(fold(title));
+        return items != null ? items.get(0) : null;
+    }
+
+    public List<AudioItem> all(String title) {
+        List<AudioItem> items = byTitle.get(fold(title));
+        return items != null ? new ArrayList<>(items) : Collections.emptyList();
+    }
+
+    public int count(String title) {
+        List<AudioItem> items = byTitle.get(fold(title));
+        return items != null ? items.size() : 0;
+    }
+
+    public boolean contains(String title) {
+        return byTitle.containsKey(fold(title));
+    }
+
+    public void clear() {
+        byTitle.clear();
+    }
+
+    /**
+     * Нормализира текст така, че fold(a).equals(fold(b)) точно когато
+     * a.equalsIgnoreCase(b). Всеки символ се обработва поотделно
+     * (toUpperCase, после toLowerCase), както прави equalsIgnoreCase.
+     */
+    public static String fold(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); ) {
+            int cp = s.codePointAt(i);
+            sb.appendCodePoint(Character.toLowerCase(Character.toUpperCase(cp)));
+            i += Character.charCount(cp);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,41 @@
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Първите k обекта в даден ред от произволна колекция.
+ *
+ * Пази се купчина (PriorityQueue) от най-добрите k досега, с най-лошия от
+ * тях на върха: всеки следващ обект се сравнява само с него. Така времето
+ * е O(n log k), паметта - O(k), а колекцията не се копира и не се сортира.
+ */
+public final class TopK {
+
+    private TopK() {
+    }
+
+    /**
+     * Първите k обекта от items, които минават filter (null = всички),
+     * подредени по order.
+     */
+    public static List<AudioItem> select(Iterable<AudioItem> items, Comparator<AudioItem> order, int k,
+                                         Predicate<AudioItem> filter) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        PriorityQueue<AudioItem> heap = new PriorityQueue<>(Math.min(k, 1024), order.reversed());
+        for (AudioItem item : items) {
+            if (filter != null && !filter.test(item)) {
+                continue;
+            }
+            if (heap.size() < k) {
+                heap.add(item);
+            } else if (order.compare(item, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(item);
+            }
+        }
+        List<AudioItem> results = new ArrayList<>(heap);
+        results.sort(order);
+        return results;
+    }
+}